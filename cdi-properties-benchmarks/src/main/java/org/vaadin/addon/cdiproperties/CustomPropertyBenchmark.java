@@ -0,0 +1,75 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.addon.cdiproperties.annotation.GridLayoutProperties;
+import org.vaadin.addon.cdiproperties.annotation.LabelProperties;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.GridLayout;
+import com.vaadin.ui.Label;
+
+/**
+ * Measures each built-in {@link CustomProperty} in isolation, applied to an
+ * existing component. Localized registration is turned off so that only the
+ * text lookup is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomPropertyBenchmark {
+
+    @LabelProperties(captionKey = "key1", descriptionKey = "key2", valueKey = "key3", localized = false, styleName = {
+            "header", "large" }, width = "100%", heightValue = 50)
+    private static Object label;
+
+    @GridLayoutProperties(margin = { true, false, true })
+    private static Object gridLayout;
+
+    @Param({ "CustomPropertySize", "CustomPropertyStyleName",
+            "CustomPropertyCaptionKey", "CustomPropertyDescriptionKey",
+            "CustomPropertyLabelValueKey", "CustomPropertyMargin" })
+    private String customProperty;
+
+    private CustomProperty property;
+    private Component component;
+    private PropertyValues values;
+
+    @Setup
+    public void setUp() throws Exception {
+        final TextBundle textBundle = new Stubs.InMemoryTextBundle(10, "key");
+        property = Stubs.customProperty(customProperty, textBundle,
+                Stubs.localizer(textBundle));
+        if ("CustomPropertyMargin".equals(customProperty)) {
+            component = new GridLayout();
+            values = ComponentConfigurator.getPropertyValues(Stubs
+                    .injectionPoint(CustomPropertyBenchmark.class,
+                            "gridLayout"), GridLayoutProperties.class);
+        } else {
+            component = new Label();
+            values = ComponentConfigurator.getPropertyValues(Stubs
+                    .injectionPoint(CustomPropertyBenchmark.class, "label"),
+                    LabelProperties.class);
+        }
+    }
+
+    @Benchmark
+    public Component apply() {
+        property.apply(component, values);
+        return component;
+    }
+}
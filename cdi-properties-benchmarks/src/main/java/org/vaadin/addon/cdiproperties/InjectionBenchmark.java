@@ -0,0 +1,94 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.spi.InjectionPoint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.addon.cdiproperties.annotation.GridLayoutProperties;
+import org.vaadin.addon.cdiproperties.annotation.GridProperties;
+import org.vaadin.addon.cdiproperties.annotation.LabelProperties;
+import org.vaadin.addon.cdiproperties.configurator.GridConfigurator;
+import org.vaadin.addon.cdiproperties.configurator.GridLayoutConfigurator;
+import org.vaadin.addon.cdiproperties.configurator.LabelConfigurator;
+
+import com.vaadin.shared.ui.ContentMode;
+import com.vaadin.ui.Component;
+
+/**
+ * Measures {@link ComponentConfigurator#getComponent} and the generated typed
+ * configurators used by the default producers for a simple, a heavy and a
+ * layout component, including the built-in custom properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InjectionBenchmark {
+
+    @LabelProperties(value = "Hello", contentMode = ContentMode.HTML, styleName = "header", sizeUndefined = true)
+    private static Object label;
+
+    @GridProperties(caption = "Orders", description = "All orders", id = "orders", styleName = { "orders", "striped" }, sizeFull = true)
+    private static Object grid;
+
+    @GridLayoutProperties(caption = "Address", id = "address", styleName = "form", margin = { true, false }, width = "100%")
+    private static Object gridLayout;
+
+    private ComponentConfigurator configurator;
+    private InjectionPoint labelIp;
+    private InjectionPoint gridIp;
+    private InjectionPoint gridLayoutIp;
+
+    @Setup
+    public void setUp() throws Exception {
+        configurator = Stubs.configurator(new Stubs.InMemoryTextBundle(10,
+                "key"));
+        labelIp = Stubs.injectionPoint(InjectionBenchmark.class, "label");
+        gridIp = Stubs.injectionPoint(InjectionBenchmark.class, "grid");
+        gridLayoutIp = Stubs.injectionPoint(InjectionBenchmark.class,
+                "gridLayout");
+    }
+
+    @Benchmark
+    public Component label() throws Exception {
+        return configurator.getComponent(LabelProperties.class, labelIp);
+    }
+
+    @Benchmark
+    public Component grid() throws Exception {
+        return configurator.getComponent(GridProperties.class, gridIp);
+    }
+
+    @Benchmark
+    public Component gridLayout() throws Exception {
+        return configurator.getComponent(GridLayoutProperties.class,
+                gridLayoutIp);
+    }
+
+    @Benchmark
+    public Component labelConfigurator() throws Exception {
+        return LabelConfigurator.create(configurator, labelIp);
+    }
+
+    @Benchmark
+    public Component gridConfigurator() throws Exception {
+        return GridConfigurator.create(configurator, gridIp);
+    }
+
+    @Benchmark
+    public Component gridLayoutConfigurator() throws Exception {
+        return GridLayoutConfigurator.create(configurator, gridLayoutIp);
+    }
+}
@@ -0,0 +1,89 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.ui.Label;
+
+/**
+ * Measures a locale change, i.e. {@link Localizer#updateCaption}, for a UI
+ * with a growing number of localized components. Every component has a
+ * localized caption, every other one a localized description and every
+ * fourth one a localized value, drawn from 50 keys. Unless textsChanged is
+ * set, the texts stay the same and the components are skipped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalizerBenchmark {
+
+    private static final int KEYS = 50;
+
+    @Param({ "100", "1000", "10000" })
+    private int components;
+
+    @Param({ "true", "false" })
+    private boolean textsChanged;
+
+    private Alternating textBundle;
+
+    private Localizer localizer;
+    // Strongly referenced, the localizer only keeps weak references
+    private Label[] labels;
+
+    @Setup
+    public void setUp() throws Exception {
+        textBundle = new Alternating();
+        localizer = Stubs.localizer(textBundle);
+        labels = new Label[components];
+        for (int i = 0; i < components; i++) {
+            labels[i] = new Label();
+            localizer.addLocalizedCaption(labels[i], "key" + i % KEYS, null);
+            if (i % 2 == 0) {
+                localizer.addLocalizedDescription(labels[i], "key"
+                        + (i + 1) % KEYS, null);
+            }
+            if (i % 4 == 0) {
+                localizer.addLocalizedLabelValue(labels[i], "key"
+                        + (i + 2) % KEYS, null);
+            }
+        }
+    }
+
+    @Benchmark
+    public void updateCaption() {
+        if (textsChanged) {
+            textBundle.odd = !textBundle.odd;
+        }
+        localizer.updateCaption(null);
+    }
+
+    /**
+     * Switches between two sets of texts for the same keys.
+     */
+    private static class Alternating implements TextBundle {
+        private final TextBundle even = new Stubs.InMemoryTextBundle(KEYS,
+                "key");
+        private boolean odd;
+
+        @Override
+        public String getText(String key, Object... params) {
+            final String text = even.getText(key);
+            return odd ? text + "'" : text;
+        }
+    }
+}
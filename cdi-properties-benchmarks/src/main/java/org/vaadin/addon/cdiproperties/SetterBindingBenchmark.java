@@ -0,0 +1,125 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.addon.cdiproperties.annotation.TextFieldProperties;
+
+import com.vaadin.ui.TextField;
+
+/**
+ * Compares the ways of applying annotation values to component setters: the
+ * original per-injection introspection, cached {@link Method#invoke}, the
+ * method handles bound by {@link PropertyPlan} and the memoized
+ * {@link PropertyValues} snapshot used for injection points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetterBindingBenchmark {
+
+    @TextFieldProperties(caption = "Name", placeholder = "Enter a name", description = "The full name", id = "name")
+    private static Object annotated;
+
+    private Annotation annotation;
+    private Method[] attributes;
+    private Method[] setters;
+    private PropertyValues snapshot;
+
+    @Setup
+    public void setUp() throws Exception {
+        annotation = SetterBindingBenchmark.class.getDeclaredField(
+                "annotated").getAnnotation(TextFieldProperties.class);
+
+        final Map<String, Method> writeMethods = writeMethods();
+        final List<Method> attributeList = new ArrayList<Method>();
+        final List<Method> setterList = new ArrayList<Method>();
+        for (Method attribute : TextFieldProperties.class.getDeclaredMethods()) {
+            final Method setter = writeMethods.get(attribute.getName());
+            if (setter != null
+                    && PropertyPlan.wrap(setter.getParameterTypes()[0])
+                            .isAssignableFrom(
+                                    PropertyPlan.wrap(attribute.getReturnType()))) {
+                attributeList.add(attribute);
+                setterList.add(setter);
+            }
+        }
+        attributes = attributeList.toArray(new Method[0]);
+        setters = setterList.toArray(new Method[0]);
+        snapshot = new PropertyValues(annotation);
+    }
+
+    private static Map<String, Method> writeMethods() throws Exception {
+        final BeanInfo bi = Introspector.getBeanInfo(TextField.class);
+        final Map<String, Method> methods = new HashMap<String, Method>();
+        for (PropertyDescriptor p : bi.getPropertyDescriptors()) {
+            methods.put(p.getName(), p.getWriteMethod());
+        }
+        return methods;
+    }
+
+    @Benchmark
+    public TextField introspection() throws Exception {
+        final TextField component = new TextField();
+        final Map<String, Method> methods = writeMethods();
+        for (Method method : annotation.getClass().getMethods()) {
+            try {
+                Object value = method.invoke(annotation);
+                if (!ComponentConfigurator.IGNORED_STRING.equals(value)) {
+                    methods.get(method.getName()).invoke(component, value);
+                }
+            } catch (Exception e) {
+                // Ignore
+            }
+        }
+        return component;
+    }
+
+    @Benchmark
+    public TextField methodInvoke() throws Exception {
+        final TextField component = new TextField();
+        for (int i = 0; i < attributes.length; i++) {
+            final Object value = attributes[i].invoke(annotation);
+            if (!ComponentConfigurator.IGNORED_STRING.equals(value)) {
+                setters[i].invoke(component, value);
+            }
+        }
+        return component;
+    }
+
+    @Benchmark
+    public TextField methodHandles() {
+        final TextField component = new TextField();
+        PropertyPlan.get(TextField.class, TextFieldProperties.class)
+                .bind(PropertyPlan.read(annotation)).apply(component);
+        return component;
+    }
+
+    @Benchmark
+    public TextField snapshot() {
+        final TextField component = new TextField();
+        snapshot.applySetters(component);
+        return component;
+    }
+}
@@ -0,0 +1,243 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.UnsatisfiedResolutionException;
+import javax.enterprise.inject.spi.Annotated;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.enterprise.util.TypeLiteral;
+
+/**
+ * Stand-ins for the CDI container used by the benchmarks: injection points
+ * backed by annotated fields, fixed {@link Instance}s, an in-memory
+ * {@link TextBundle} and field injection by reflection.
+ */
+final class Stubs {
+
+    // Only used with -Dorg.vaadin.addon.cdiproperties.metrics=true
+    private static final Metrics METRICS = new Metrics();
+
+    private Stubs() {
+    }
+
+    /**
+     * An injection point for the given annotated field. The field is the
+     * member, so snapshots are memoized as in a container.
+     */
+    static InjectionPoint injectionPoint(Class<?> holder, String fieldName)
+            throws NoSuchFieldException {
+        return new StubInjectionPoint(holder.getDeclaredField(fieldName));
+    }
+
+    /**
+     * Creates a configurator with all built-in custom properties.
+     */
+    static ComponentConfigurator configurator(TextBundle textBundle)
+            throws Exception {
+        final Localizer localizer = localizer(textBundle);
+        final List<CustomProperty> customProperties = new ArrayList<CustomProperty>();
+        for (Class<?> nested : ComponentConfigurator.class.getDeclaredClasses()) {
+            if (CustomProperty.class.isAssignableFrom(nested)) {
+                customProperties.add(customProperty(nested.getSimpleName(),
+                        textBundle, localizer));
+            }
+        }
+        final ComponentConfigurator configurator = new ComponentConfigurator();
+        inject(configurator, "customProperties", new StubInstance<CustomProperty>(
+                customProperties));
+        inject(configurator, "metrics", METRICS);
+        return configurator;
+    }
+
+    /**
+     * Creates the built-in custom property with the given simple class name.
+     */
+    static CustomProperty customProperty(String simpleName,
+            TextBundle textBundle, Localizer localizer) throws Exception {
+        for (Class<?> nested : ComponentConfigurator.class.getDeclaredClasses()) {
+            if (nested.getSimpleName().equals(simpleName)) {
+                final Constructor<?> constructor = nested
+                        .getDeclaredConstructor();
+                constructor.setAccessible(true);
+                final CustomProperty customProperty = (CustomProperty) constructor
+                        .newInstance();
+                injectIfPresent(customProperty, "textBundle",
+                        new StubInstance<TextBundle>(Arrays.asList(textBundle)));
+                injectIfPresent(customProperty, "localizer",
+                        new StubInstance<Localizer>(Arrays.asList(localizer)));
+                injectIfPresent(customProperty, "sharedTranslations",
+                        sharedTranslations());
+                return customProperty;
+            }
+        }
+        throw new IllegalArgumentException(simpleName);
+    }
+
+    static Localizer localizer(TextBundle textBundle) throws Exception {
+        final Localizer localizer = new Localizer();
+        inject(localizer, "textBundle",
+                new StubInstance<TextBundle>(Arrays.asList(textBundle)));
+        inject(localizer, "sharedTranslations", sharedTranslations());
+        inject(localizer, "metrics", METRICS);
+        return localizer;
+    }
+
+    private static SharedTranslations sharedTranslations() throws Exception {
+        final SharedTranslations sharedTranslations = new SharedTranslations();
+        inject(sharedTranslations, "metrics", METRICS);
+        return sharedTranslations;
+    }
+
+    static void inject(Object target, String fieldName, Object value)
+            throws Exception {
+        if (!injectIfPresent(target, fieldName, value)) {
+            throw new NoSuchFieldException(fieldName);
+        }
+    }
+
+    private static boolean injectIfPresent(Object target, String fieldName,
+            Object value) throws IllegalAccessException {
+        for (Class<?> c = target.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                final Field field = c.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(target, value);
+                return true;
+            } catch (NoSuchFieldException e) {
+                // Try the superclass
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A text bundle returning "key.text" for each of its keys.
+     */
+    static class InMemoryTextBundle implements TextBundle {
+        private final Map<String, String> texts = new HashMap<String, String>();
+
+        InMemoryTextBundle(int keys, String prefix) {
+            for (int i = 0; i < keys; i++) {
+                texts.put(prefix + i, prefix + i + ".text");
+            }
+        }
+
+        @Override
+        public String getText(String key, Object... params) {
+            final String text = texts.get(key);
+            return text != null ? text : key;
+        }
+    }
+
+    private static class StubInjectionPoint implements InjectionPoint {
+        private final Field field;
+        private final Set<Annotation> qualifiers;
+
+        private StubInjectionPoint(Field field) {
+            this.field = field;
+            qualifiers = new HashSet<Annotation>(Arrays.asList(field
+                    .getAnnotations()));
+        }
+
+        @Override
+        public Type getType() {
+            return field.getGenericType();
+        }
+
+        @Override
+        public Set<Annotation> getQualifiers() {
+            return qualifiers;
+        }
+
+        @Override
+        public Bean<?> getBean() {
+            return null;
+        }
+
+        @Override
+        public Member getMember() {
+            return field;
+        }
+
+        @Override
+        public Annotated getAnnotated() {
+            return null;
+        }
+
+        @Override
+        public boolean isDelegate() {
+            return false;
+        }
+
+        @Override
+        public boolean isTransient() {
+            return false;
+        }
+    }
+
+    private static class StubInstance<T> implements Instance<T> {
+        private final List<T> beans;
+
+        private StubInstance(List<T> beans) {
+            this.beans = beans;
+        }
+
+        @Override
+        public T get() {
+            if (beans.isEmpty()) {
+                throw new UnsatisfiedResolutionException();
+            }
+            return beans.get(0);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return beans.iterator();
+        }
+
+        @Override
+        public Instance<T> select(Annotation... qualifiers) {
+            return this;
+        }
+
+        // The stubs hold a single kind of bean, subtypes select the same
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <U extends T> Instance<U> select(Class<U> subtype,
+                Annotation... qualifiers) {
+            return (Instance<U>) this;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <U extends T> Instance<U> select(TypeLiteral<U> subtype,
+                Annotation... qualifiers) {
+            return (Instance<U>) this;
+        }
+
+        @Override
+        public boolean isUnsatisfied() {
+            return beans.isEmpty();
+        }
+
+        @Override
+        public boolean isAmbiguous() {
+            return beans.size() > 1;
+        }
+    }
+}
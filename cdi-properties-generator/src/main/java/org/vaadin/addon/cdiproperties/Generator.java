@@ -4,17 +4,34 @@ import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.openpojo.reflection.PojoClass;
 import com.openpojo.reflection.impl.PojoClassFactory;
@@ -62,83 +79,306 @@ class Generator {
     private static Set primitiveWrapperClasses = Sets.newHashSet(Boolean.class,
             Byte.class, Character.class, Short.class, Integer.class,
             Long.class, Float.class, Double.class);
+    // application, session or dependent
+    private static String producerScope = System.getProperty(
+            "cdiproperties.producerScope", "session");
 
 
+    public static void main(final String[] args) throws Exception {
 
-    public static void main(String[] args) throws IntrospectionException {
-
-        Set<ComponentModel> componentModels = Sets.newHashSet();
+        // Skip the generation if neither Vaadin nor the generator changed
+        final String stampFile = System.getProperty("cdiproperties.fingerprint");
+        final String fingerprint = fingerprint(args);
+        if (stampFile != null && isUpToDate(new File(stampFile), fingerprint)) {
+            return;
+        }
 
+        List<PojoClass> pojoClasses = new ArrayList<PojoClass>();
         for (PojoClass pojoClass : PojoClassFactory
                 .enumerateClassesByExtendingType("com.vaadin.ui",
                         Component.class, null)) {
             if ((pojoClass.isConcrete())
                     && !excludedClasses.contains(pojoClass.getClazz())) {
-                Object implementation = getPojoInstance(pojoClass);
+                pojoClasses.add(pojoClass);
+            }
+        }
 
-                if (implementation != null) {
-                    ComponentModel componentModel = new ComponentModel(pojoClass.getClazz());
+        // Introspect and write the component classes in parallel
+        final Set<String> writtenFiles = Collections
+                .synchronizedSet(new TreeSet<String>());
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime
+                .getRuntime().availableProcessors());
+        Set<ComponentModel> componentModels = Sets.newHashSet();
+        try {
+            List<Future<ComponentModel>> futures = new ArrayList<Future<ComponentModel>>();
+            for (final PojoClass pojoClass : pojoClasses) {
+                futures.add(executor.submit(new Callable<ComponentModel>() {
+                    @Override
+                    public ComponentModel call() throws Exception {
+                        return generate(pojoClass, args, writtenFiles);
+                    }
+                }));
+            }
+            for (Future<ComponentModel> future : futures) {
+                try {
+                    ComponentModel componentModel = future.get();
+                    if (componentModel != null) {
+                        componentModels.add(componentModel);
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw (Error) e.getCause();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try {
+            String filename = args[1] + "/ComponentProducers.java";
+            writeFile(filename, toProducer(componentModels, args.length > 2));
+            writtenFiles.add(new File(filename).getAbsolutePath());
 
-                    // Add bean properties
-                    BeanInfo bi = Introspector.getBeanInfo(implementation.getClass());
-                    PropertyDescriptor[] propertyDescriptor = bi.getPropertyDescriptors();
+            filename = args[1] + "/ScopedComponentConfigurator.java";
+            writeFile(filename, toScopedConfigurator());
+            writtenFiles.add(new File(filename).getAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
-                    for (PropertyDescriptor pid : bi.getPropertyDescriptors()) {
-                        boolean setterFound = pid.getWriteMethod() != null;
+        String indexFile = System.getProperty("cdiproperties.metadataIndex");
+        if (indexFile != null) {
+            File file = new File(indexFile);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            writeFile(indexFile, toMetadataIndex(componentModels));
+            writtenFiles.add(file.getAbsolutePath());
+        }
 
-                        if (setterFound && !excludedProperties.contains(pid.getName())) {
-                            Class type = pid.getPropertyType();
+        deleteStaleFiles(args, writtenFiles);
 
-                            if (primitiveWrapperClasses.contains(type)
-                                    || type.isEnum() || type == String.class
-                                    || type == Class.class) {
+        if (stampFile != null) {
+            writeStamp(new File(stampFile), fingerprint, writtenFiles);
+        }
+    }
 
+    private static ComponentModel generate(PojoClass pojoClass, String[] args,
+            Set<String> writtenFiles) throws IntrospectionException {
+        Object implementation = getPojoInstance(pojoClass);
+        if (implementation == null) {
+            return null;
+        }
 
-                                String defaultValue = formatDefaultValue(getDefaultValue(pid));
-                                if (type == String.class) {
-                                    defaultValue = "org.vaadin.addon.cdiproperties.ComponentConfigurator.IGNORED_STRING";
-                                }
+        ComponentModel componentModel = new ComponentModel(pojoClass.getClazz());
 
-                                ComponentProperty cp = new ComponentProperty(
-                                        formatType(type),
-                                        pid.getName(),
-                                        defaultValue);
-                                componentModel.getProperties().add(cp);
-                            }
-                        }
-                    }
+        // Add bean properties
+        BeanInfo bi = Introspector.getBeanInfo(implementation.getClass());
 
-                    // Add custom properties
-                    componentModel.getProperties().addAll(
-                            getCustomProperties(pojoClass, implementation));
-
-                    try {
-                        writeFile(
-                                args[0]
-                                        + "/"
-                                        + componentModel.formatAnnotationClassName()
-                                        + ".java",
-                                componentModel.toAnnotation());
-                    } catch (IOException e) {
-                        e.printStackTrace();
+        for (PropertyDescriptor pid : bi.getPropertyDescriptors()) {
+            boolean setterFound = pid.getWriteMethod() != null;
+            if (setterFound) {
+                componentModel.getWriteMethods().put(pid.getName(),
+                        pid.getWriteMethod());
+            }
+
+            if (setterFound && !excludedProperties.contains(pid.getName())) {
+                Class type = pid.getPropertyType();
+
+                if (primitiveWrapperClasses.contains(type)
+                        || type.isEnum() || type == String.class
+                        || type == Class.class) {
+
+
+                    String defaultValue = formatDefaultValue(getDefaultValue(pid));
+                    String componentDefault = null;
+                    if (type == String.class) {
+                        defaultValue = "org.vaadin.addon.cdiproperties.ComponentConfigurator.IGNORED_STRING";
+                    } else if (type != Class.class) {
+                        componentDefault = getComponentDefault(pid,
+                                implementation);
                     }
 
-                    componentModels.add(componentModel);
+                    ComponentProperty cp = new ComponentProperty(
+                            formatType(type),
+                            pid.getName(),
+                            defaultValue,
+                            pid.getWriteMethod().getName(),
+                            componentDefault);
+                    componentModel.getProperties().add(cp);
                 }
             }
         }
 
+        // Add custom properties
+        componentModel.getProperties().addAll(
+                getCustomProperties(pojoClass, implementation));
+
         try {
-            writeFile(args[1] + "/ComponentProducers.java",
-                    toProducer(componentModels));
+            String filename = args[0] + "/"
+                    + componentModel.formatAnnotationClassName() + ".java";
+            writeFile(filename, componentModel.toAnnotation());
+            writtenFiles.add(new File(filename).getAbsolutePath());
+
+            filename = args[0] + "/"
+                    + componentModel.formatLiteralClassName() + ".java";
+            writeFile(filename, componentModel.toLiteral());
+            writtenFiles.add(new File(filename).getAbsolutePath());
         } catch (IOException e) {
             e.printStackTrace();
         }
 
+        if (args.length > 2) {
+            try {
+                String filename = args[2] + "/"
+                        + componentModel.formatConfiguratorClassName()
+                        + ".java";
+                writeFile(filename, componentModel.toConfigurator());
+                writtenFiles.add(new File(filename).getAbsolutePath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return componentModel;
+    }
+
+    /**
+     * Hashes the generator arguments and settings, the Vaadin jar and the
+     * generator jar or class directory.
+     */
+    private static String fingerprint(String[] args) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        for (String arg : args) {
+            digest.update(arg.getBytes("UTF-8"));
+            digest.update((byte) 0);
+        }
+        digest.update(producerScope.getBytes("UTF-8"));
+        digestCodeSource(digest, Component.class);
+        digestCodeSource(digest, Generator.class);
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void digestCodeSource(MessageDigest digest, Class<?> type)
+            throws IOException {
+        File location = null;
+        try {
+            location = new File(type.getProtectionDomain().getCodeSource()
+                    .getLocation().toURI());
+        } catch (Exception e) {
+            // Fall back to the class file
+        }
+
+        if (location != null && location.isDirectory()) {
+            // e.g. target/classes, covering the nested template classes too
+            digestDirectory(digest, location);
+            return;
+        }
+        InputStream in;
+        if (location != null && location.isFile()) {
+            in = new FileInputStream(location);
+        } else {
+            in = type.getResourceAsStream(type.getSimpleName() + ".class");
+        }
+        digestStream(digest, in);
+    }
+
+    private static void digestDirectory(MessageDigest digest, File directory)
+            throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            digest.update(file.getName().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            if (file.isDirectory()) {
+                digestDirectory(digest, file);
+            } else {
+                digestStream(digest, new FileInputStream(file));
+            }
+        }
+    }
+
+    private static void digestStream(MessageDigest digest, InputStream in)
+            throws IOException {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean isUpToDate(File stamp, String fingerprint)
+            throws IOException {
+        if (!stamp.isFile()) {
+            return false;
+        }
+        List<String> lines = Files.readAllLines(stamp.toPath(),
+                Charset.forName("UTF-8"));
+        if (lines.isEmpty() || !lines.get(0).equals(fingerprint)) {
+            return false;
+        }
+        for (String filename : lines.subList(1, lines.size())) {
+            if (!new File(filename).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeStamp(File stamp, String fingerprint,
+            Set<String> writtenFiles) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        lines.add(fingerprint);
+        lines.addAll(writtenFiles);
+        if (stamp.getParentFile() != null) {
+            stamp.getParentFile().mkdirs();
+        }
+        Files.write(stamp.toPath(), lines, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Removes the sources of components that no longer exist.
+     */
+    private static void deleteStaleFiles(String[] args, Set<String> writtenFiles) {
+        for (String directory : args) {
+            File[] files = new File(directory).listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.getName().endsWith(".java")
+                        && !writtenFiles.contains(file.getAbsolutePath())) {
+                    file.delete();
+                }
+            }
+        }
     }
 
     private static Object getDefaultValue(PropertyDescriptor pid) {
-        Object result = pid.getReadMethod().getDefaultValue();
+        Object result = pid.getReadMethod() != null ? pid.getReadMethod()
+                .getDefaultValue() : null;
 
         if (result == null) {
             if (pid.getPropertyType().isEnum()) {
@@ -153,6 +393,29 @@ class Generator {
         return result;
     }
 
+    /**
+     * The value of the property on a freshly created component, used by the
+     * skipDefaultValues mode only. Null if it cannot be read.
+     */
+    private static String getComponentDefault(PropertyDescriptor pid,
+            Object implementation) {
+        if (pid.getReadMethod() == null) {
+            return null;
+        }
+        Object result;
+        try {
+            result = pid.getReadMethod().invoke(implementation);
+        } catch (Exception e) {
+            return null;
+        }
+        if (result == null
+                || result instanceof Float && !Float.isFinite((Float) result)
+                || result instanceof Double && !Double.isFinite((Double) result)) {
+            return null;
+        }
+        return formatDefaultValue(result);
+    }
+
     private static Collection<? extends ComponentProperty> getCustomProperties(
             PojoClass pojoClass, Object implementation) {
         Collection<ComponentProperty> result = Sets.newHashSet();
@@ -182,11 +445,15 @@ class Generator {
         result.add(new ComponentProperty("String", "captionKey",
                 "org.vaadin.addon.cdiproperties.ComponentConfigurator.IGNORED_STRING"));
 
+        result.add(new ComponentProperty("String[]", "captionParams", "{}"));
+
         result.add(new ComponentProperty("boolean", "sizeFull", "false"));
         result.add(new ComponentProperty("boolean", "sizeUndefined", "false"));
 
         result.add(new ComponentProperty("boolean", "localized", "true"));
 
+        result.add(new ComponentProperty("boolean", "lazy", "false"));
+
         result.add(new ComponentProperty("String[]", "styleName", "{}"));
 
         if (implementation instanceof AbstractOrderedLayout
@@ -197,11 +464,14 @@ class Generator {
         if (implementation instanceof Label) {
             result.add(new ComponentProperty("String", "valueKey",
                     "org.vaadin.addon.cdiproperties.ComponentConfigurator.IGNORED_STRING"));
+            result.add(new ComponentProperty("String[]", "valueParams", "{}"));
         }
 
         if (implementation instanceof AbstractComponent) {
             result.add(new ComponentProperty("String", "descriptionKey",
                     "org.vaadin.addon.cdiproperties.ComponentConfigurator.IGNORED_STRING"));
+            result.add(new ComponentProperty("String[]", "descriptionParams",
+                    "{}"));
         }
 
         return result;
@@ -228,25 +498,56 @@ class Generator {
             result = "\"" + defaultValue + "\"";
         } else if (defaultValue instanceof Float) {
             result = result.concat("f");
-        } else if (defaultValue != null && defaultValue.getClass().isEnum()) {
+        } else if (defaultValue instanceof Enum) {
             Enum e = (Enum) defaultValue;
-            result = e.getClass().getCanonicalName() + "." + e.name();
+            result = e.getDeclaringClass().getCanonicalName() + "." + e.name();
         } else if (defaultValue instanceof Class) {
             result = ((Class) defaultValue).getCanonicalName() + ".class";
         }
         return result;
     }
 
-    private static String toProducer(Set<ComponentModel> componentModels) {
+    private static String formatScope() {
+        if ("application".equals(producerScope)) {
+            return "@ApplicationScoped";
+        } else if ("dependent".equals(producerScope)) {
+            return "@Dependent";
+        }
+        return "@SessionScoped";
+    }
+
+    /**
+     * Replaces the application-scoped ComponentConfigurator with one of the
+     * selected scope.
+     */
+    private static String toScopedConfigurator() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package org.vaadin.addon.cdiproperties.producer;\n");
+        sb.append("import javax.enterprise.inject.*;\n");
+        sb.append("import javax.enterprise.context.*;\n");
+        sb.append("import org.vaadin.addon.cdiproperties.ComponentConfigurator;\n");
+        sb.append("\n\n").append(formatScope()).append("\n");
+        sb.append("@Specializes\n");
+        sb.append("@SuppressWarnings(\"serial\")\n");
+        sb.append("public class ScopedComponentConfigurator extends ComponentConfigurator {\n");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private static String toProducer(Set<ComponentModel> componentModels,
+            boolean typedConfigurators) {
         StringBuilder sb = new StringBuilder();
         sb.append("package org.vaadin.addon.cdiproperties.producer;\n");
         sb.append("import javax.enterprise.inject.*;\n");
         sb.append("import javax.inject.*;\n");
         sb.append("import org.vaadin.addon.cdiproperties.ComponentConfigurator;\n");
         sb.append("import javax.enterprise.inject.spi.*;\n");
-        sb.append("import javax.enterprise.context.SessionScoped;\n");
+        sb.append("import javax.enterprise.context.*;\n");
         sb.append("import org.vaadin.addon.cdiproperties.annotation.*;\n");
-        sb.append("\n\n@SessionScoped\n");
+        if (typedConfigurators) {
+            sb.append("import org.vaadin.addon.cdiproperties.configurator.*;\n");
+        }
+        sb.append("\n\n").append(formatScope()).append("\n");
         // sb.append("@Target({ ElementType.METHOD, ElementType.PARAMETER, ElementType.FIELD })\n");
         // sb.append("@Retention(RetentionPolicy.RUNTIME)\n");
         sb.append("public class ComponentProducers implements java.io.Serializable {\n\n");
@@ -262,13 +563,70 @@ class Generator {
             }
         });
         for (ComponentModel componentModel : ordered) {
-            sb.append(componentModel.toProducerMethod());
+            sb.append(componentModel.toProducerMethod(typedConfigurators));
         }
 
         sb.append("\n\n}");
         return sb.toString();
     }
 
+    /**
+     * Serializes the write methods of the components for PropertyPlan, which
+     * then does not need to introspect them at runtime. The format is read by
+     * MetadataIndex:
+     *
+     * <pre>
+     * int magic, short version
+     * short typeCount, UTF type...
+     * short classCount, (UTF className, short propertyCount,
+     *         (UTF property, UTF setter, short typeIndex)...)...
+     * </pre>
+     */
+    static byte[] toMetadataIndex(Set<ComponentModel> componentModels)
+            throws IOException {
+        List<ComponentModel> ordered = Lists.newArrayList(componentModels);
+        Collections.sort(ordered, new Comparator<ComponentModel>() {
+            @Override
+            public int compare(ComponentModel o1, ComponentModel o2) {
+                return o1.getComponentClass().getName()
+                        .compareTo(o2.getComponentClass().getName());
+            }
+        });
+
+        List<String> types = new ArrayList<String>();
+        for (ComponentModel componentModel : ordered) {
+            for (Method method : componentModel.getWriteMethods().values()) {
+                String type = method.getParameterTypes()[0].getName();
+                if (!types.contains(type)) {
+                    types.add(type);
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x43445049);
+        out.writeShort(1);
+        out.writeShort(types.size());
+        for (String type : types) {
+            out.writeUTF(type);
+        }
+        out.writeShort(ordered.size());
+        for (ComponentModel componentModel : ordered) {
+            out.writeUTF(componentModel.getComponentClass().getName());
+            out.writeShort(componentModel.getWriteMethods().size());
+            for (Map.Entry<String, Method> entry : componentModel
+                    .getWriteMethods().entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().getName());
+                out.writeShort(types.indexOf(entry.getValue()
+                        .getParameterTypes()[0].getName()));
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
     private static Object getPojoInstance(PojoClass pojoClass) {
         Object instance = null;
         try {
@@ -282,14 +640,31 @@ class Generator {
     public static void writeFile(String filename, String output)
             throws IOException {
         File file = new File(filename);
+
+        // Keep unchanged files untouched so that they are not compiled again
+        if (file.isFile()
+                && Arrays.equals(Files.readAllBytes(file.toPath()),
+                        output.getBytes())) {
+            return;
+        }
         FileWriter writer = new FileWriter(file);
         writer.write(output);
         writer.close();
     }
 
+    static void writeFile(String filename, byte[] output) throws IOException {
+        File file = new File(filename);
+        if (file.isFile()
+                && Arrays.equals(Files.readAllBytes(file.toPath()), output)) {
+            return;
+        }
+        Files.write(file.toPath(), output);
+    }
+
     static class ComponentModel {
         private final Class componentClass;
         private final Set<ComponentProperty> properties = Sets.newHashSet();
+        private final Map<String, Method> writeMethods = new TreeMap<String, Method>();
 
         public ComponentModel(Class componentClass) {
             super();
@@ -304,6 +679,13 @@ class Generator {
             return componentClass;
         }
 
+        /**
+         * All write methods by property name, as found by the Introspector.
+         */
+        public Map<String, Method> getWriteMethods() {
+            return writeMethods;
+        }
+
         public String toAnnotation() {
             StringBuilder sb = new StringBuilder();
             sb.append("package org.vaadin.addon.cdiproperties.annotation;\n");
@@ -333,12 +715,142 @@ class Generator {
             return sb.toString();
         }
 
+        /**
+         * An AnnotationLiteral of the annotation with a builder, for
+         * configuring components that are not injected.
+         */
+        public String toLiteral() {
+            String annotation = formatAnnotationClassName();
+            String literal = formatLiteralClassName();
+
+            List<ComponentProperty> ordered = Lists.newArrayList(properties);
+            Collections.sort(ordered, new Comparator<ComponentProperty>() {
+                @Override
+                public int compare(ComponentProperty o1, ComponentProperty o2) {
+                    return o1.name.compareTo(o2.name);
+                }
+
+            });
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("package org.vaadin.addon.cdiproperties.annotation;\n");
+            sb.append("import javax.enterprise.util.*;\n");
+            sb.append("\n\n@SuppressWarnings(\"all\")\n");
+            sb.append("public class ").append(literal)
+                    .append(" extends AnnotationLiteral<").append(annotation)
+                    .append("> implements ").append(annotation).append(" {\n");
+            for (ComponentProperty cp : ordered) {
+                sb.append("\nprivate final ").append(cp.type).append(" ")
+                        .append(cp.name).append(";");
+            }
+
+            sb.append("\n\nprivate ").append(literal)
+                    .append("(Builder builder) {");
+            for (ComponentProperty cp : ordered) {
+                sb.append("\n\tthis.").append(cp.name).append(" = builder.")
+                        .append(cp.name).append(";");
+            }
+            sb.append("\n}\n");
+
+            sb.append("\npublic static Builder builder() {\n");
+            sb.append("\treturn new Builder();\n");
+            sb.append("}\n");
+
+            for (ComponentProperty cp : ordered) {
+                sb.append("\npublic ").append(cp.type).append(" ")
+                        .append(cp.name).append("() {\n");
+                sb.append("\treturn ").append(cp.name).append(";\n");
+                sb.append("}\n");
+            }
+
+            sb.append("\npublic static class Builder {\n");
+            for (ComponentProperty cp : ordered) {
+                sb.append("\n\tprivate ").append(cp.type).append(" ")
+                        .append(cp.name).append(" = ")
+                        .append(cp.defaultValue).append(";");
+            }
+            sb.append("\n");
+            for (ComponentProperty cp : ordered) {
+                sb.append("\n\tpublic Builder ").append(cp.name).append("(")
+                        .append(cp.type).append(" ").append(cp.name)
+                        .append(") {\n");
+                sb.append("\t\tthis.").append(cp.name).append(" = ")
+                        .append(cp.name).append(";\n");
+                sb.append("\t\treturn this;\n");
+                sb.append("\t}\n");
+            }
+            sb.append("\n\tpublic ").append(literal).append(" build() {\n");
+            sb.append("\t\treturn new ").append(literal).append("(this);\n");
+            sb.append("\t}\n");
+            sb.append("}\n");
+
+            sb.append("\n}");
+            return sb.toString();
+        }
+
+        public String formatLiteralClassName() {
+            return formatAnnotationClassName() + "Literal";
+        }
+
         public String formatAnnotationClassName() {
             return (componentClass == AbstractComponent.class ? ""
                     : componentClass.getSimpleName()) + "Properties";
         }
 
-        public String toProducerMethod() {
+        public String formatConfiguratorClassName() {
+            return componentClass.getSimpleName() + "Configurator";
+        }
+
+        public String toConfigurator() {
+            String componentType = componentClass.getCanonicalName();
+            String annotationType = formatAnnotationClassName();
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("package org.vaadin.addon.cdiproperties.configurator;\n");
+            sb.append("import javax.enterprise.inject.spi.*;\n");
+            sb.append("import org.vaadin.addon.cdiproperties.ComponentConfigurator;\n");
+            sb.append("import org.vaadin.addon.cdiproperties.PropertyValues;\n");
+            sb.append("import org.vaadin.addon.cdiproperties.annotation.*;\n");
+            sb.append("\n\npublic final class ").append(formatConfiguratorClassName())
+                    .append(" {\n\n");
+            sb.append("private ").append(formatConfiguratorClassName())
+                    .append("() {\n}\n\n");
+            sb.append("public static ").append(componentType)
+                    .append(" create(final ComponentConfigurator cc, final InjectionPoint ip) throws Exception {\n");
+            sb.append("\tfinal PropertyValues values = ComponentConfigurator.getPropertyValues(ip, ")
+                    .append(annotationType).append(".class);\n");
+            sb.append("\tif (values.getImplementation() != ").append(componentType)
+                    .append(".class || values.isPrecompiled()\n")
+                    .append("\t\t\t|| values.isLazy()) {\n");
+            sb.append("\t\treturn cc.getComponent(").append(annotationType)
+                    .append(".class, ip);\n");
+            sb.append("\t}\n");
+            sb.append("\tfinal long start = ComponentConfigurator.startConfiguration();\n");
+            sb.append("\tfinal ").append(componentType).append(" c = new ")
+                    .append(componentType).append("();\n");
+
+            List<ComponentProperty> ordered = Lists.newArrayList(properties);
+            Collections.sort(ordered, new Comparator<ComponentProperty>() {
+                @Override
+                public int compare(ComponentProperty o1, ComponentProperty o2) {
+                    return o1.name.compareTo(o2.name);
+                }
+
+            });
+            for (ComponentProperty cp : ordered) {
+                if (cp.setterName != null) {
+                    sb.append(cp.toSetterCall());
+                }
+            }
+
+            sb.append("\tcc.applyCustomProperties(c, values);\n");
+            sb.append("\tcc.componentConfigured(c, values, start);\n");
+            sb.append("\treturn c;\n");
+            sb.append("}\n\n}");
+            return sb.toString();
+        }
+
+        public String toProducerMethod(boolean typedConfigurator) {
             StringBuilder sb = new StringBuilder();
 
             sb.append("@Produces\n");
@@ -347,9 +859,14 @@ class Generator {
                     .append(" create").append(componentClass.getSimpleName())
                     .append("With").append(formatAnnotationClassName())
                     .append("(final InjectionPoint ip) throws Exception {\n");
-            sb.append("\treturn cc.getComponent(")
-                    .append(formatAnnotationClassName())
-                    .append(".class, ip);\n");
+            if (typedConfigurator) {
+                sb.append("\treturn ").append(formatConfiguratorClassName())
+                        .append(".create(cc, ip);\n");
+            } else {
+                sb.append("\treturn cc.getComponent(")
+                        .append(formatAnnotationClassName())
+                        .append(".class, ip);\n");
+            }
             sb.append("}\n\n");
             return sb.toString();
         }
@@ -358,13 +875,28 @@ class Generator {
             private final String type;
             private final String name;
             private final String defaultValue;
+            private final String setterName;
+            private final String componentDefault;
 
             public ComponentProperty(String type, String name,
                     String defaultValue) {
+                this(type, name, defaultValue, null, null);
+            }
+
+            public ComponentProperty(String type, String name,
+                    String defaultValue, String setterName) {
+                this(type, name, defaultValue, setterName, null);
+            }
+
+            public ComponentProperty(String type, String name,
+                    String defaultValue, String setterName,
+                    String componentDefault) {
                 super();
                 this.type = type;
                 this.name = name;
                 this.defaultValue = defaultValue;
+                this.setterName = setterName;
+                this.componentDefault = componentDefault;
             }
 
             String toAnnotationMethod() {
@@ -375,6 +907,62 @@ class Generator {
                 return sb.toString();
             }
 
+            /**
+             * Reads the value from the memoized PropertyValues snapshot, so
+             * that injections do not go through the annotation proxy.
+             */
+            String toSetterCall() {
+                String local = formatLocalName();
+                String condition = null;
+                if (type.equals("String") || type.equals("java.lang.String")) {
+                    condition = "!ComponentConfigurator.IGNORED_STRING.equals("
+                            + local + ")";
+                } else if (componentDefault != null) {
+                    // Primitives and enums, skipped in skipDefaultValues mode
+                    condition = "!ComponentConfigurator.isSkipDefaultValues()\n\t\t\t|| "
+                            + local + " != " + componentDefault;
+                }
+                boolean ignorable = condition != null;
+                String indent = ignorable ? "\t\t" : "\t";
+                StringBuilder sb = new StringBuilder();
+                sb.append("\tfinal ").append(type).append(" ").append(local)
+                        .append(" = (").append(formatWrapperType())
+                        .append(") values.get(\"").append(name)
+                        .append("\");\n");
+                if (ignorable) {
+                    sb.append("\tif (").append(condition).append(") {\n");
+                }
+                sb.append(indent).append("try {\n");
+                sb.append(indent).append("\tc.").append(setterName)
+                        .append("(").append(local).append(");\n");
+                sb.append(indent).append("} catch (RuntimeException e) {\n");
+                sb.append(indent).append("\t// Ignore, the setter rejected the value\n");
+                sb.append(indent).append("}\n");
+                if (ignorable) {
+                    sb.append("\t}\n");
+                }
+                return sb.toString();
+            }
+
+            private String formatLocalName() {
+                // Not to shadow the parameters and locals of create()
+                return Arrays.asList("cc", "ip", "values", "start", "c")
+                        .contains(name) ? name + "Value" : name;
+            }
+
+            private String formatWrapperType() {
+                if (type.equals("boolean")) {
+                    return "Boolean";
+                } else if (type.equals("int")) {
+                    return "Integer";
+                } else if (type.equals("float")) {
+                    return "Float";
+                } else if (type.equals("double")) {
+                    return "Double";
+                }
+                return type;
+            }
+
         }
     }
 
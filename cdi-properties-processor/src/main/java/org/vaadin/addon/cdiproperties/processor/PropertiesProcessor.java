@@ -0,0 +1,492 @@
+package org.vaadin.addon.cdiproperties.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a configurator for each field and parameter annotated with one of
+ * the generated {@code *Properties} annotations. The setter values of the
+ * annotation are inlined as constants, so the runtime neither reads the
+ * annotation nor looks up the setters. Attributes that do not map to a setter
+ * and conflicting attributes are reported as compile errors.
+ * <p>
+ * The configurators of a class are registered by a generated
+ * {@code <Class>_CdiProperties} class listed in
+ * META-INF/services/org.vaadin.addon.cdiproperties.PrecompiledConfigurators.
+ * On incremental compiles, the entries of compiled classes that no longer
+ * generate a configurator are dropped; their outputs are left to the build
+ * tool.
+ */
+@SupportedAnnotationTypes("org.vaadin.addon.cdiproperties.annotation.*")
+public class PropertiesProcessor extends AbstractProcessor {
+
+    private static final String ANNOTATION_PACKAGE = "org.vaadin.addon.cdiproperties.annotation";
+    private static final String IGNORED_STRING = "CDI_PROPERTIES_IGNORE";
+    private static final String SERVICE_FILE = "META-INF/services/org.vaadin.addon.cdiproperties.PrecompiledConfigurators";
+
+    // Attributes applied by the custom properties at runtime
+    private static final Set<String> CUSTOM_ATTRIBUTES = new HashSet<String>(
+            Arrays.asList("implementation", "widthValue", "heightValue",
+                    "widthUnits", "heightUnits", "width", "height",
+                    "captionKey", "descriptionKey", "valueKey", "sizeFull",
+                    "sizeUndefined", "localized", "styleName", "margin",
+                    "lazy", "captionParams", "valueParams",
+                    "descriptionParams"));
+
+    private final Set<String> services = new TreeSet<String>();
+    // The configurator names of all classes compiled in this run
+    private final Set<String> compiled = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv
+                .getRootElements())) {
+            collectCompiled(type);
+        }
+
+        final Map<TypeElement, Map<String, String>> configurators = new LinkedHashMap<TypeElement, Map<String, String>>();
+        for (TypeElement annotation : annotations) {
+            if (!annotation.getSimpleName().toString().endsWith("Properties")
+                    || !annotation.getQualifiedName().toString()
+                            .startsWith(ANNOTATION_PACKAGE + ".")) {
+                continue;
+            }
+            for (Element element : roundEnv
+                    .getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.FIELD
+                        && element.getKind() != ElementKind.PARAMETER) {
+                    continue;
+                }
+                final AnnotationMirror mirror = getAnnotationMirror(element,
+                        annotation);
+                final String body = toConfigurator(element, mirror);
+                if (body != null) {
+                    final TypeElement type = getDeclaringType(element);
+                    Map<String, String> byKey = configurators.get(type);
+                    if (byKey == null) {
+                        byKey = new LinkedHashMap<String, String>();
+                        configurators.put(type, byKey);
+                    }
+                    byKey.put(key(element), body);
+                }
+            }
+        }
+
+        for (Entry<TypeElement, Map<String, String>> entry : configurators
+                .entrySet()) {
+            writeConfigurators(entry.getKey(), entry.getValue());
+        }
+
+        if (roundEnv.processingOver() && !compiled.isEmpty()) {
+            writeServiceFile();
+        }
+        return false;
+    }
+
+    private void collectCompiled(TypeElement type) {
+        compiled.add(configuratorName(type));
+        for (TypeElement member : ElementFilter.typesIn(type
+                .getEnclosedElements())) {
+            collectCompiled(member);
+        }
+    }
+
+    /**
+     * Returns the body of the create method for the given injection point, or
+     * null if the injection point is left to the runtime.
+     */
+    private String toConfigurator(Element element, AnnotationMirror mirror) {
+        final Map<String, AnnotationValue> explicit = new LinkedHashMap<String, AnnotationValue>();
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror
+                .getElementValues().entrySet()) {
+            explicit.put(entry.getKey().getSimpleName().toString(),
+                    entry.getValue());
+        }
+
+        final TypeElement implementation = getImplementation(mirror);
+        if (implementation == null) {
+            return null;
+        }
+
+        boolean valid = validate(element, mirror, explicit);
+
+        final StringBuilder sb = new StringBuilder();
+        final String componentType = implementation.getQualifiedName()
+                .toString();
+        sb.append("\t\t\t\tfinal ").append(componentType).append(" c = new ")
+                .append(componentType).append("();\n");
+        for (ExecutableElement attribute : ElementFilter.methodsIn(mirror
+                .getAnnotationType().asElement().getEnclosedElements())) {
+            final String name = attribute.getSimpleName().toString();
+            final AnnotationValue value = explicit.get(name);
+            if (value == null || CUSTOM_ATTRIBUTES.contains(name)
+                    || IGNORED_STRING.equals(value.getValue())) {
+                continue;
+            }
+            final ExecutableElement setter = findSetter(implementation, name,
+                    attribute.getReturnType());
+            if (setter == null) {
+                error(element, mirror, value, "Attribute " + name
+                        + " does not map to a setter of " + componentType);
+                valid = false;
+                continue;
+            }
+            sb.append("\t\t\t\tc.").append(setter.getSimpleName()).append('(')
+                    .append(formatValue(value.getValue())).append(");\n");
+        }
+        sb.append("\t\t\t\treturn c;\n");
+
+        // Lazy components are configured on attach by the runtime
+        if (!valid || !isInstantiable(implementation)
+                || isTrue(explicit.get("lazy"))) {
+            return null;
+        }
+        return sb.toString();
+    }
+
+    private boolean validate(Element element, AnnotationMirror mirror,
+            Map<String, AnnotationValue> explicit) {
+        boolean valid = true;
+        if (isTrue(explicit.get("sizeFull"))
+                && isTrue(explicit.get("sizeUndefined"))) {
+            error(element, mirror, explicit.get("sizeUndefined"),
+                    "sizeFull and sizeUndefined are mutually exclusive");
+            valid = false;
+        }
+        final AnnotationValue margin = explicit.get("margin");
+        if (margin != null && ((List<?>) margin.getValue()).size() > 4) {
+            error(element, mirror, margin,
+                    "margin accepts at most four values");
+            valid = false;
+        }
+        if (isSet(explicit.get("width")) && explicit.containsKey("widthValue")) {
+            error(element, mirror, explicit.get("widthValue"),
+                    "width and widthValue are mutually exclusive");
+            valid = false;
+        }
+        if (isSet(explicit.get("height"))
+                && explicit.containsKey("heightValue")) {
+            error(element, mirror, explicit.get("heightValue"),
+                    "height and heightValue are mutually exclusive");
+            valid = false;
+        }
+        if (isSet(explicit.get("caption")) && isSet(explicit.get("captionKey"))) {
+            processingEnv.getMessager().printMessage(Kind.WARNING,
+                    "caption is overridden by captionKey", element, mirror,
+                    explicit.get("caption"));
+        }
+        return valid;
+    }
+
+    private TypeElement getImplementation(AnnotationMirror mirror) {
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv
+                .getElementUtils().getElementValuesWithDefaults(mirror)
+                .entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("implementation")) {
+                final Object value = entry.getValue().getValue();
+                if (value instanceof DeclaredType) {
+                    return (TypeElement) ((DeclaredType) value).asElement();
+                }
+            }
+        }
+        return null;
+    }
+
+    private ExecutableElement findSetter(TypeElement implementation,
+            String name, TypeMirror attributeType) {
+        final String setterName = "set"
+                + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (ExecutableElement method : ElementFilter
+                .methodsIn(processingEnv.getElementUtils().getAllMembers(
+                        implementation))) {
+            if (method.getSimpleName().contentEquals(setterName)
+                    && method.getModifiers().contains(Modifier.PUBLIC)
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && method.getParameters().size() == 1
+                    && isAssignable(attributeType, method.getParameters()
+                            .get(0).asType())) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private boolean isAssignable(TypeMirror from, TypeMirror to) {
+        if (processingEnv.getTypeUtils().isAssignable(from, to)) {
+            return true;
+        }
+        return from.getKind().isPrimitive()
+                && processingEnv.getTypeUtils().isAssignable(
+                        processingEnv.getTypeUtils().boxedClass(
+                                (PrimitiveType) from).asType(), to);
+    }
+
+    private boolean isInstantiable(TypeElement implementation) {
+        if (!implementation.getModifiers().contains(Modifier.PUBLIC)
+                || implementation.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter
+                .constructorsIn(implementation.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTrue(AnnotationValue value) {
+        return value != null && Boolean.TRUE.equals(value.getValue());
+    }
+
+    private static boolean isSet(AnnotationValue value) {
+        return value != null && !IGNORED_STRING.equals(value.getValue());
+    }
+
+    private void error(Element element, AnnotationMirror mirror,
+            AnnotationValue value, String message) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element,
+                mirror, value);
+    }
+
+    private static AnnotationMirror getAnnotationMirror(Element element,
+            TypeElement annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().asElement().equals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static TypeElement getDeclaringType(Element element) {
+        Element enclosing = element.getEnclosingElement();
+        while (!(enclosing instanceof TypeElement)) {
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return (TypeElement) enclosing;
+    }
+
+    /**
+     * The registry key of an injection point, matching the key computed from
+     * the injection point member at runtime.
+     */
+    private String key(Element element) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(binaryName(getDeclaringType(element))).append('#');
+        if (element.getKind() == ElementKind.FIELD) {
+            return sb.append(element.getSimpleName()).toString();
+        }
+
+        final ExecutableElement executable = (ExecutableElement) element
+                .getEnclosingElement();
+        sb.append(executable.getSimpleName()).append('(');
+        final List<? extends VariableElement> parameters = executable
+                .getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(typeName(parameters.get(i).asType()));
+        }
+        return sb.append("):").append(parameters.indexOf(element)).toString();
+    }
+
+    private String typeName(TypeMirror type) {
+        final TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        if (erasure.getKind() == TypeKind.ARRAY) {
+            return typeName(((ArrayType) erasure).getComponentType()) + "[]";
+        } else if (erasure.getKind() == TypeKind.DECLARED) {
+            return binaryName((TypeElement) ((DeclaredType) erasure)
+                    .asElement());
+        }
+        return erasure.toString();
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private String formatValue(Object value) {
+        if (value instanceof String) {
+            return processingEnv.getElementUtils().getConstantExpression(
+                    value);
+        } else if (value instanceof VariableElement) {
+            final VariableElement constant = (VariableElement) value;
+            return ((TypeElement) constant.getEnclosingElement())
+                    .getQualifiedName() + "." + constant.getSimpleName();
+        } else if (value instanceof TypeMirror) {
+            return processingEnv.getTypeUtils().erasure((TypeMirror) value)
+                    + ".class";
+        } else if (value instanceof List) {
+            final StringBuilder sb = new StringBuilder("{");
+            for (Object element : (List<?>) value) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(formatValue(((AnnotationValue) element).getValue()));
+            }
+            return sb.append('}').toString();
+        }
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+    /**
+     * The name of the {@code <Class>_CdiProperties} class of a type.
+     */
+    private String configuratorName(TypeElement type) {
+        final PackageElement pkg = processingEnv.getElementUtils()
+                .getPackageOf(type);
+        final String packageName = pkg.isUnnamed() ? "" : pkg
+                .getQualifiedName().toString();
+        final String binaryName = binaryName(type);
+        final String simpleName = (packageName.isEmpty() ? binaryName
+                : binaryName.substring(packageName.length() + 1)).replace(
+                '$', '_')
+                + "_CdiProperties";
+        return packageName.isEmpty() ? simpleName : packageName + "."
+                + simpleName;
+    }
+
+    private void writeConfigurators(TypeElement type,
+            Map<String, String> configurators) {
+        final PackageElement pkg = processingEnv.getElementUtils()
+                .getPackageOf(type);
+        final String packageName = pkg.isUnnamed() ? "" : pkg
+                .getQualifiedName().toString();
+        final String className = configuratorName(type);
+        final String simpleName = packageName.isEmpty() ? className
+                : className.substring(packageName.length() + 1);
+
+        final StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("import java.util.Map;\n\n");
+        sb.append("import org.vaadin.addon.cdiproperties.PrecompiledConfigurator;\n");
+        sb.append("import org.vaadin.addon.cdiproperties.PrecompiledConfigurators;\n\n");
+        sb.append("public final class ").append(simpleName)
+                .append(" implements PrecompiledConfigurators {\n\n");
+        sb.append("\t@Override\n");
+        sb.append("\tpublic void register(Map<String, PrecompiledConfigurator> registry) {\n");
+        for (Entry<String, String> entry : configurators.entrySet()) {
+            sb.append("\t\tregistry.put(")
+                    .append(processingEnv.getElementUtils()
+                            .getConstantExpression(entry.getKey()))
+                    .append(", new PrecompiledConfigurator() {\n");
+            sb.append("\t\t\t@Override\n");
+            sb.append("\t\t\tpublic com.vaadin.ui.Component create() {\n");
+            sb.append(entry.getValue());
+            sb.append("\t\t\t}\n");
+            sb.append("\t\t});\n");
+        }
+        sb.append("\t}\n");
+        sb.append("}\n");
+
+        try {
+            final JavaFileObject file = processingEnv.getFiler()
+                    .createSourceFile(className, type);
+            final Writer writer = file.openWriter();
+            try {
+                writer.write(sb.toString());
+            } finally {
+                writer.close();
+            }
+            services.add(className);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Kind.ERROR,
+                    "Unable to write " + className + ": " + e.getMessage(),
+                    type);
+        }
+    }
+
+    private void writeServiceFile() {
+        // Keep the entries of classes not compiled in this run, drop those of
+        // compiled classes that no longer generate a configurator
+        final Set<String> entries = new TreeSet<String>(services);
+        boolean existed = false;
+        try {
+            final FileObject existing = processingEnv.getFiler().getResource(
+                    StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(existing.openInputStream(), "UTF-8"));
+            existed = true;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String entry = line.trim();
+                    if (entry.isEmpty()) {
+                        continue;
+                    } else if (!compiled.contains(entry)) {
+                        entries.add(entry);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // Ignore
+        }
+        if (entries.isEmpty() && !existed) {
+            return;
+        }
+
+        try {
+            final FileObject file = processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            final Writer writer = file.openWriter();
+            try {
+                for (String entry : entries) {
+                    writer.write(entry);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Kind.ERROR,
+                    "Unable to write " + SERVICE_FILE + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.vaadin.addon.cdiproperties;
+
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+
+/**
+ * Looks up beans from objects the container does not manage, such as
+ * listeners stored in a session. Keeping those free of bean references
+ * avoids serializing application-scoped beans with every session. The bean
+ * manager is captured by {@link PropertiesExtension}.
+ */
+final class Beans {
+
+    private static volatile BeanManager beanManager;
+
+    private Beans() {
+    }
+
+    static void setBeanManager(BeanManager beanManager) {
+        Beans.beanManager = beanManager;
+    }
+
+    static <T> T get(Class<T> type) {
+        final Bean<?> bean = beanManager.resolve(beanManager.getBeans(type));
+        return type.cast(beanManager.getReference(bean, type,
+                beanManager.createCreationalContext(bean)));
+    }
+}
@@ -0,0 +1,79 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.decorator.Decorator;
+import javax.decorator.Delegate;
+import javax.inject.Inject;
+
+/**
+ * Decorator serving {@link TextBundle} lookups without parameters from the
+ * {@link TextBundleCache}. Enable it in the <code>decorators</code> section of
+ * the application's beans.xml and with
+ * {@code -Dorg.vaadin.addon.cdiproperties.textCache=true}. The cache is shared
+ * by all sessions and keyed by locale, so the texts must not depend on the
+ * session, user or tenant.
+ */
+@SuppressWarnings("serial")
+@Decorator
+public abstract class CachingTextBundle implements TextBundle, Serializable {
+
+    @Inject
+    @Delegate
+    private TextBundle delegate;
+
+    @Inject
+    private TextBundleCache cache;
+
+    @Override
+    public String getText(final String key, final Object... params) {
+        if (!Options.TEXT_CACHE || params != null && params.length > 0) {
+            return delegate.getText(key, params);
+        }
+
+        final Locale locale = TextBundleCache.currentLocale();
+        String text = cache.get(locale, key);
+        if (text == null) {
+            text = delegate.getText(key);
+            if (text != null) {
+                cache.put(locale, key, text);
+            }
+        }
+        return text;
+    }
+
+    @Override
+    public Map<String, String> getTexts(final Set<String> keys) {
+        if (!Options.TEXT_CACHE) {
+            return delegate.getTexts(keys);
+        }
+        final Locale locale = TextBundleCache.currentLocale();
+        final Map<String, String> texts = new HashMap<String, String>(
+                keys.size() * 2);
+        final Set<String> missing = new HashSet<String>();
+        for (String key : keys) {
+            final String text = cache.get(locale, key);
+            if (text != null) {
+                texts.put(key, text);
+            } else {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, String> entry : delegate.getTexts(missing)
+                    .entrySet()) {
+                if (entry.getValue() != null) {
+                    cache.put(locale, entry.getKey(), entry.getValue());
+                }
+                texts.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return texts;
+    }
+}
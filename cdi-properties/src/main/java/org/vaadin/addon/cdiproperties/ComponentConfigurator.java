@@ -1,162 +1,266 @@
 package org.vaadin.addon.cdiproperties;
 
-import com.vaadin.server.Sizeable;
+import com.vaadin.server.ClientConnector.AttachEvent;
+import com.vaadin.server.ClientConnector.AttachListener;
+import com.vaadin.shared.Registration;
 import com.vaadin.shared.ui.MarginInfo;
 import com.vaadin.ui.*;
 
-import javax.enterprise.context.SessionScoped;
+import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.UnsatisfiedResolutionException;
 import javax.enterprise.inject.spi.InjectionPoint;
 import javax.inject.Inject;
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
 import java.io.Serializable;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Iterator;
-
-
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Creates and configures the components for the generated producers. Holds
+ * no per-session state, so by default a single instance serves the whole
+ * application. The generated ScopedComponentConfigurator specializes it with
+ * the scope selected at build time.
+ */
 @SuppressWarnings("serial")
-@SessionScoped
+@ApplicationScoped
 public class ComponentConfigurator implements Serializable {
 
     public final static String IGNORED_STRING = "CDI_PROPERTIES_IGNORE";
     @Inject
     private Instance<CustomProperty> customProperties;
+    @Inject
+    private Metrics metrics;
 
-    private static Annotation getPropertyAnnotation(InjectionPoint ip,
-            Class annotationClass) {
-        Annotation result = null;
+    private transient List<CustomProperty> registeredCustomProperties;
+    private transient volatile ConcurrentMap<Class<?>, CustomProperty[]> customPropertyIndex;
+
+    public static <A extends Annotation> A getPropertyAnnotation(
+            InjectionPoint ip, Class<A> annotationClass) {
+        A result = null;
         for (final Annotation annotation : ip.getQualifiers()) {
             if (annotationClass.isAssignableFrom(annotation.getClass())) {
-                result = annotation;
+                result = annotationClass.cast(annotation);
                 break;
             }
         }
         return result;
     }
 
-    private static Object getPropertyValue(Object instance, String methodName) {
-        Object result = null;
-        try {
-            result = instance.getClass().getMethod(methodName).invoke(instance);
-        } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-        } catch (SecurityException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        }
-        return result;
+    /**
+     * Returns the memoized snapshot of the given property annotation found at
+     * an injection point.
+     */
+    public static PropertyValues getPropertyValues(InjectionPoint ip,
+            Class<? extends Annotation> annotationClass) {
+        return PropertyValues.get(ip, getPropertyAnnotation(ip,
+                annotationClass));
     }
 
-    private static void applyProperties(Component component,
-                                        Annotation propertyAnnotation) {
-        try {
-            final BeanInfo bi = Introspector.getBeanInfo(component.getClass());
-            HashMap<String, Method> methods = new HashMap<>(bi.getPropertyDescriptors().length);
-            for (PropertyDescriptor p : bi.getPropertyDescriptors()) {
-                methods.put(p.getName(), p.getWriteMethod());
-            }
-
-            for (Method method : propertyAnnotation.getClass().getMethods()) {
-                try {
-                    Object value = method.invoke(propertyAnnotation);
-                    if (!IGNORED_STRING.equals(value)) {
-                        methods.get(method.getName()).invoke(component, value);
-                    }
-                } catch (Exception e) {
-                    // Ignore
-                }
-            }
-        } catch (IntrospectionException e) {
-            // Ignore
-        }
+    /**
+     * Whether setters are skipped for values equal to the component default,
+     * see {@code -Dorg.vaadin.addon.cdiproperties.skipDefaultValues}.
+     */
+    public static boolean isSkipDefaultValues() {
+        return Options.SKIP_DEFAULT_VALUES;
+    }
 
+    /**
+     * Returns a snapshot of the given property annotation, typically a
+     * generated literal such as {@code TextFieldPropertiesLiteral}. Keep the
+     * snapshot to configure many components with the same values.
+     */
+    public static PropertyValues getPropertyValues(Annotation annotation) {
+        return new PropertyValues(annotation);
     }
 
     public <T extends Component> T getComponent(
             Class<? extends Annotation> annotationClass, InjectionPoint ip)
             throws InstantiationException, IllegalAccessException {
-        Annotation propertyAnnotation = getPropertyAnnotation(ip,
-                annotationClass);
-        Class<T> componentClass = (Class) getPropertyValue(propertyAnnotation,
-                "implementation");
-        Component component = componentClass.newInstance();
+        return create(getPropertyValues(ip, annotationClass));
+    }
+
+    /**
+     * Creates and configures a component outside of injection, for example
+     * {@code create(TextFieldPropertiesLiteral.builder().width("100%").build())}.
+     */
+    public <T extends Component> T create(Annotation annotation)
+            throws InstantiationException, IllegalAccessException {
+        return create(getPropertyValues(annotation));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Component> T create(PropertyValues values)
+            throws InstantiationException, IllegalAccessException {
+        final long start = startConfiguration();
 
-        // Apply the setters
-        applyProperties(component, propertyAnnotation);
+        // Create the component and apply the setters
+        Component component = values.createComponent();
+
+        if (values.isLazy()) {
+            // The rest is done when the component is first attached
+            final ConfigureOnAttach listener = new ConfigureOnAttach(values);
+            listener.registration = component.addAttachListener(listener);
+            return (T) component;
+        }
 
         // Apply custom properties
-        Iterator<CustomProperty> iterator = customProperties.iterator();
-        while (iterator.hasNext()) {
-            CustomProperty customProperty = iterator.next();
-            if (customProperty.appliesTo(component)) {
-                customProperty.apply(component, propertyAnnotation);
+        applyCustomProperties(component, values);
+
+        componentConfigured(component, values, start);
+        return (T) component;
+    }
+
+    /**
+     * Applies the given property annotation to an existing component. The
+     * implementation attribute is ignored.
+     */
+    public <T extends Component> T configure(T component, Annotation annotation) {
+        return configure(component, getPropertyValues(annotation));
+    }
+
+    public <T extends Component> T configure(T component, PropertyValues values) {
+        final long start = startConfiguration();
+        values.applySetters(component);
+        applyCustomProperties(component, values);
+        componentConfigured(component, values, start);
+        return component;
+    }
+
+    /**
+     * Returns the start time to pass to {@link #componentConfigured}, or 0 if
+     * metrics are disabled.
+     */
+    public static long startConfiguration() {
+        return Options.METRICS ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a component created and configured since the given
+     * {@link #startConfiguration()}, e.g. by a generated configurator.
+     */
+    public void componentConfigured(Component component,
+            PropertyValues values, long start) {
+        if (Options.METRICS) {
+            metrics.componentConfigured(values.getAnnotation()
+                    .annotationType(), component.getClass(), System.nanoTime()
+                    - start);
+        }
+    }
+
+    public void applyCustomProperties(Component component,
+            PropertyValues values) {
+        for (CustomProperty customProperty : getCustomProperties(component
+                .getClass())) {
+            if (Options.METRICS) {
+                final long start = System.nanoTime();
+                customProperty.apply(component, values);
+                metrics.customPropertyApplied(customProperty,
+                        component.getClass(), System.nanoTime() - start);
+            } else {
+                customProperty.apply(component, values);
             }
         }
+    }
 
-        return (T) component;
+    /**
+     * Applies the setters and custom properties of a lazy component on its
+     * first attach. Holds no reference to the configurator, so that it is
+     * not serialized with the session.
+     */
+    private static class ConfigureOnAttach implements AttachListener {
+        private final Annotation annotation;
+        private transient PropertyValues values;
+        private Registration registration;
+
+        private ConfigureOnAttach(PropertyValues values) {
+            this.values = values;
+            annotation = values.getAnnotation();
+        }
+
+        @Override
+        public void attach(AttachEvent event) {
+            registration.remove();
+            registration = null;
+            if (values == null) {
+                // Deserialized
+                values = new PropertyValues(annotation);
+            }
+            Beans.get(ComponentConfigurator.class).configure(
+                    (Component) event.getConnector(), values);
+        }
     }
 
-    public static abstract class CustomProperty {
-        abstract void apply(Component component, Annotation propertyAnnotation);
+    private CustomProperty[] getCustomProperties(
+            Class<? extends Component> componentClass) {
+        ConcurrentMap<Class<?>, CustomProperty[]> index = customPropertyIndex;
+        if (index == null) {
+            index = new ConcurrentHashMap<Class<?>, CustomProperty[]>();
+            customPropertyIndex = index;
+        }
+        CustomProperty[] result = index.get(componentClass);
+        if (result == null) {
+            final List<CustomProperty> applicable = new ArrayList<CustomProperty>();
+            for (CustomProperty customProperty : getRegisteredCustomProperties()) {
+                if (customProperty.appliesTo(componentClass)) {
+                    applicable.add(customProperty);
+                }
+            }
+            result = applicable.toArray(new CustomProperty[0]);
+            index.putIfAbsent(componentClass, result);
+        }
+        return result;
+    }
 
-        abstract boolean appliesTo(Component component);
+    private synchronized List<CustomProperty> getRegisteredCustomProperties() {
+        if (registeredCustomProperties == null) {
+            final List<CustomProperty> registered = new ArrayList<CustomProperty>();
+            for (CustomProperty customProperty : customProperties) {
+                registered.add(customProperty);
+            }
+            Collections.sort(registered, new Comparator<CustomProperty>() {
+                @Override
+                public int compare(CustomProperty o1, CustomProperty o2) {
+                    if (o1.getPriority() != o2.getPriority()) {
+                        return o1.getPriority() < o2.getPriority() ? -1 : 1;
+                    }
+                    return o1.getClass().getName()
+                            .compareTo(o2.getClass().getName());
+                }
+            });
+            registeredCustomProperties = registered;
+        }
+        return registeredCustomProperties;
     }
 
     private static class CustomPropertySize extends CustomProperty {
         @Override
-        void apply(Component component, Annotation propertyAnnotation) {
-            Boolean sizeFull = (Boolean) getPropertyValue(propertyAnnotation,
-                    "sizeFull");
-            Boolean sizeUndefined = (Boolean) getPropertyValue(
-                    propertyAnnotation, "sizeUndefined");
-
-            if (sizeFull) {
+        public void apply(Component component, PropertyValues values) {
+            if (values.isSizeFull()) {
                 component.setSizeFull();
-            } else if (sizeUndefined) {
+            } else if (values.isSizeUndefined()) {
                 component.setSizeUndefined();
             } else {
-                String height = (String) getPropertyValue(propertyAnnotation,
-                        "height");
-                if (!IGNORED_STRING.equals(height)) {
-                    component.setHeight(height);
+                if (values.getHeight() != null) {
+                    component.setHeight(values.getHeight());
                 } else {
-                    Float heightValue = (Float) getPropertyValue(
-                            propertyAnnotation, "heightValue");
-                    Sizeable.Unit unit = (Sizeable.Unit) getPropertyValue(
-                            propertyAnnotation, "heightUnits");
-                    component.setHeight(heightValue, unit);
+                    component.setHeight(values.getHeightValue(),
+                            values.getHeightUnits());
                 }
 
-                String width = (String) getPropertyValue(propertyAnnotation,
-                        "width");
-                if (!IGNORED_STRING.equals(width)) {
-                    component.setWidth(width);
+                if (values.getWidth() != null) {
+                    component.setWidth(values.getWidth());
                 } else {
-                    Float widthValue = (Float) getPropertyValue(
-                            propertyAnnotation, "widthValue");
-                    Sizeable.Unit unit = (Sizeable.Unit) getPropertyValue(
-                            propertyAnnotation, "widthUnits");
-                    component.setWidth(widthValue, unit);
+                    component.setWidth(values.getWidthValue(),
+                            values.getWidthUnits());
                 }
             }
         }
-
-        @Override
-        boolean appliesTo(Component component) {
-            return true;
-        }
     }
 
     private static class CustomPropertyCaptionKey extends CustomProperty {
@@ -164,19 +268,20 @@ public class ComponentConfigurator implements Serializable {
         private Instance<TextBundle> textBundle;
         @Inject
         private Instance<Localizer> localizer;
+        @Inject
+        private SharedTranslations sharedTranslations;
 
         @Override
-        void apply(Component component, Annotation propertyAnnotation) {
-            final String captionKey = (String) getPropertyValue(
-                    propertyAnnotation, "captionKey");
-            final Boolean localized = (Boolean) getPropertyValue(
-                    propertyAnnotation, "localized");
-            if (!IGNORED_STRING.equals(captionKey)) {
+        public void apply(Component component, PropertyValues values) {
+            final String captionKey = values.getCaptionKey();
+            if (captionKey != null) {
                 try {
-                    component.setCaption(textBundle.get().getText(captionKey));
-                    if (localized) {
+                    component.setCaption(sharedTranslations.getText(
+                            textBundle.get(), captionKey,
+                            values.getCaptionParams()));
+                    if (values.isLocalized()) {
                         localizer.get().addLocalizedCaption(component,
-                                captionKey);
+                                captionKey, values.getCaptionParams());
 
                     }
                 } catch (final UnsatisfiedResolutionException e) {
@@ -185,11 +290,6 @@ public class ComponentConfigurator implements Serializable {
 
             }
         }
-
-        @Override
-        boolean appliesTo(Component component) {
-            return true;
-        }
     }
 
     private static class CustomPropertyDescriptionKey extends CustomProperty {
@@ -197,20 +297,21 @@ public class ComponentConfigurator implements Serializable {
         private Instance<TextBundle> textBundle;
         @Inject
         private Instance<Localizer> localizer;
+        @Inject
+        private SharedTranslations sharedTranslations;
 
         @Override
-        void apply(Component component, Annotation propertyAnnotation) {
-            final String descriptionKey = (String) getPropertyValue(
-                    propertyAnnotation, "descriptionKey");
-            final Boolean localized = (Boolean) getPropertyValue(
-                    propertyAnnotation, "localized");
-            if (!IGNORED_STRING.equals(descriptionKey)) {
+        public void apply(Component component, PropertyValues values) {
+            final String descriptionKey = values.getDescriptionKey();
+            if (descriptionKey != null) {
                 AbstractComponent field = (AbstractComponent) component;
                 try {
-                    field.setDescription(textBundle.get().getText(descriptionKey));
-                    if (localized) {
+                    field.setDescription(sharedTranslations.getText(
+                            textBundle.get(), descriptionKey,
+                            values.getDescriptionParams()));
+                    if (values.isLocalized()) {
                         localizer.get().addLocalizedDescription(field,
-                                                            descriptionKey);
+                                descriptionKey, values.getDescriptionParams());
                     }
                 } catch (final UnsatisfiedResolutionException e) {
                     field.setDescription("No TextBundle implementation found!");
@@ -220,27 +321,15 @@ public class ComponentConfigurator implements Serializable {
         }
 
         @Override
-        boolean appliesTo(Component component) {
-            return (component instanceof AbstractComponent);
+        public Class<? extends Component> getTargetType() {
+            return AbstractComponent.class;
         }
     }
 
     private static class CustomPropertyMargin extends CustomProperty {
         @Override
-        void apply(Component component, Annotation propertyAnnotation) {
-            MarginInfo mi = null;
-            final boolean[] margin = (boolean[]) getPropertyValue(
-                    propertyAnnotation, "margin");
-            if (margin.length == 1) {
-                mi = new MarginInfo(margin[0]);
-            } else if (margin.length == 2) {
-                mi = new MarginInfo(margin[0], margin[1], margin[0], margin[1]);
-            } else if (margin.length == 3) {
-                mi = new MarginInfo(margin[0], margin[1], margin[2], margin[1]);
-            } else if (margin.length == 4) {
-                mi = new MarginInfo(margin[0], margin[1], margin[2], margin[3]);
-            }
-
+        public void apply(Component component, PropertyValues values) {
+            final MarginInfo mi = values.getMarginInfo();
             if (mi != null) {
                 if (component instanceof AbstractOrderedLayout) {
                     ((AbstractOrderedLayout) component).setMargin(mi);
@@ -251,27 +340,20 @@ public class ComponentConfigurator implements Serializable {
         }
 
         @Override
-        boolean appliesTo(Component component) {
-            return component instanceof AbstractOrderedLayout
-                    || component instanceof GridLayout;
+        public boolean appliesTo(Class<? extends Component> componentClass) {
+            return AbstractOrderedLayout.class.isAssignableFrom(componentClass)
+                    || GridLayout.class.isAssignableFrom(componentClass);
         }
     }
 
     private static class CustomPropertyStyleName extends CustomProperty {
         @Override
-        void apply(Component component, Annotation propertyAnnotation) {
-            final String[] styleNames = (String[]) getPropertyValue(
-                    propertyAnnotation, "styleName");
-            for (String styleName : styleNames) {
+        public void apply(Component component, PropertyValues values) {
+            for (String styleName : values.getStyleNames()) {
                 component.addStyleName(styleName);
                 ;
             }
         }
-
-        @Override
-        boolean appliesTo(Component component) {
-            return true;
-        }
     }
 
     private static class CustomPropertyLabelValueKey extends CustomProperty {
@@ -279,20 +361,20 @@ public class ComponentConfigurator implements Serializable {
         private Instance<TextBundle> textBundle;
         @Inject
         private Instance<Localizer> localizer;
+        @Inject
+        private SharedTranslations sharedTranslations;
 
         @Override
-        void apply(Component component, Annotation propertyAnnotation) {
-            final String valueKey = (String) getPropertyValue(
-                    propertyAnnotation, "valueKey");
-            if (!IGNORED_STRING.equals(valueKey)) {
+        public void apply(Component component, PropertyValues values) {
+            final String valueKey = values.getValueKey();
+            if (valueKey != null) {
                 try {
-                    ((Label) component).setValue(textBundle.get().getText(
-                            valueKey));
-                    final Boolean localized = (Boolean) getPropertyValue(
-                            propertyAnnotation, "localized");
-                    if (localized) {
+                    ((Label) component).setValue(sharedTranslations.getText(
+                            textBundle.get(), valueKey, values.getValueParams()));
+                    if (values.isLocalized()) {
                         localizer.get().addLocalizedLabelValue(
-                                (Label) component, valueKey);
+                                (Label) component, valueKey,
+                                values.getValueParams());
                     }
                 } catch (final UnsatisfiedResolutionException e) {
                     component.setCaption("No TextBundle implementation found!");
@@ -302,8 +384,8 @@ public class ComponentConfigurator implements Serializable {
         }
 
         @Override
-        boolean appliesTo(Component component) {
-            return component instanceof Label;
+        public Class<? extends Component> getTargetType() {
+            return Label.class;
         }
     }
 }
@@ -0,0 +1,37 @@
+package org.vaadin.addon.cdiproperties;
+
+import com.vaadin.ui.Component;
+
+/**
+ * A property applied to configured components in addition to the plain
+ * setters. Implementations are discovered as CDI beans. The properties that
+ * apply to a component class are resolved once and then applied in ascending
+ * {@link #getPriority()} order.
+ */
+public abstract class CustomProperty {
+
+    public abstract void apply(Component component, PropertyValues values);
+
+    /**
+     * The component type this property applies to. Defaults to all
+     * components.
+     */
+    public Class<? extends Component> getTargetType() {
+        return Component.class;
+    }
+
+    /**
+     * Properties with a lower priority are applied first. Defaults to 0.
+     */
+    public int getPriority() {
+        return 0;
+    }
+
+    /**
+     * Whether this property applies to components of the given class. The
+     * result is cached per class, so it must not depend on any other state.
+     */
+    public boolean appliesTo(Class<? extends Component> componentClass) {
+        return getTargetType().isAssignableFrom(componentClass);
+    }
+}
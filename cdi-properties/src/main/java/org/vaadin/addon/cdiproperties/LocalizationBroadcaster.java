@@ -0,0 +1,239 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.vaadin.addon.cdiproperties.Localizer.TextBundleUpdated;
+
+import com.vaadin.server.ClientConnector.DetachEvent;
+import com.vaadin.server.ClientConnector.DetachListener;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+
+/**
+ * Updates the texts of many UIs concurrently. Firing a
+ * {@link TextBundleUpdated} event only reaches the UI of the firing thread;
+ * {@link #broadcast(Object)} instead runs the update of every UI of the node,
+ * each under its own session lock, on a bounded executor of
+ * {@code -Dorg.vaadin.addon.cdiproperties.broadcastThreads} threads. The
+ * parameters are passed as the payload of the event would be, e.g. a
+ * {@link TextBundleChange}.
+ * <p>
+ * Do not wait for the returned future while holding a session lock, the
+ * update of that session's UIs would wait for it.
+ */
+@SuppressWarnings("serial")
+@ApplicationScoped
+public class LocalizationBroadcaster implements Serializable {
+
+    @Inject
+    private TextBundleCache textBundleCache;
+
+    @Inject
+    private SharedTranslations sharedTranslations;
+
+    // Weak so that registration does not keep closed UIs alive. Transient,
+    // the UIs of other sessions must never be serialized with this bean
+    private transient WeakIdentityMap<UI, Localizer> localizers;
+
+    private transient volatile ExecutorService executor;
+
+    void register(final UI ui, final Localizer localizer) {
+        reregister(ui, localizer);
+        ui.addDetachListener(new Unregister());
+    }
+
+    /**
+     * Registers the localizer of a UI restored from a serialized session,
+     * whose detach listener is already in place.
+     */
+    synchronized void reregister(final UI ui, final Localizer localizer) {
+        getLocalizers().put(ui, localizer);
+    }
+
+    synchronized void unregister(final UI ui) {
+        getLocalizers().remove(ui);
+    }
+
+    private WeakIdentityMap<UI, Localizer> getLocalizers() {
+        if (localizers == null) {
+            localizers = new WeakIdentityMap<UI, Localizer>();
+        }
+        return localizers;
+    }
+
+    /**
+     * Updates the texts of all UIs of the node.
+     */
+    public CompletableFuture<Result> broadcast(final Object parameters) {
+        return broadcast(null, parameters);
+    }
+
+    /**
+     * Updates the texts of all UIs of a session, e.g. after the user changed
+     * the locale in one of several browser tabs. The node-wide caches are
+     * left alone in this case, since the texts themselves did not change.
+     */
+    public CompletableFuture<Result> broadcast(final VaadinSession session,
+            final Object parameters) {
+        if (session != null) {
+            // Nothing to invalidate for a single session
+        } else if (parameters instanceof TextBundleChange) {
+            final Set<String> keys = ((TextBundleChange) parameters).getKeys();
+            textBundleCache.invalidate(keys);
+            sharedTranslations.reload(keys);
+        } else {
+            textBundleCache.invalidate();
+            sharedTranslations.reload();
+        }
+
+        final List<Entry<UI, Localizer>> targets = new ArrayList<Entry<UI, Localizer>>();
+        synchronized (this) {
+            for (Entry<UI, Localizer> entry : getLocalizers().entries()) {
+                if (session == null || entry.getKey().getSession() == session) {
+                    targets.add(entry);
+                }
+            }
+        }
+
+        final Result result = new Result();
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[targets
+                .size()];
+        for (int i = 0; i < futures.length; i++) {
+            final UI ui = targets.get(i).getKey();
+            final Localizer localizer = targets.get(i).getValue();
+            futures[i] = CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ui.accessSynchronously(new Runnable() {
+                            @Override
+                            public void run() {
+                                final long start = System.nanoTime();
+                                result.updatedComponents.addAndGet(localizer
+                                        .relocalizeNow(parameters));
+                                result.nanos.put(ui, System.nanoTime() - start);
+                            }
+                        });
+                    } catch (final UIDetachedException e) {
+                        // Ignore, the UI is gone
+                    } catch (final RuntimeException e) {
+                        result.failures.put(ui, e);
+                    }
+                }
+            }, getExecutor());
+        }
+        return CompletableFuture.allOf(futures).thenApply(
+                new Function<Void, Result>() {
+                    @Override
+                    public Result apply(Void done) {
+                        return result;
+                    }
+                });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private ExecutorService getExecutor() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    result = Executors.newFixedThreadPool(
+                            Math.max(1, Options.BROADCAST_THREADS),
+                            createThreadFactory());
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        try {
+            // Thread.ofVirtual().name(prefix, 0).factory() on Java 21+
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtual = builder.getMethod("name", String.class, long.class)
+                    .invoke(virtual, "cdi-properties-broadcaster-", 0L);
+            return (ThreadFactory) builder.getMethod("factory").invoke(
+                    virtual);
+        } catch (final ReflectiveOperationException e) {
+            // Platform threads before Java 21
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable,
+                        "cdi-properties-broadcaster-"
+                                + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Static and looking the broadcaster up, so that UIs do not reference
+     * it.
+     */
+    private static class Unregister implements DetachListener {
+        @Override
+        public void detach(final DetachEvent event) {
+            Beans.get(LocalizationBroadcaster.class).unregister(
+                    (UI) event.getConnector());
+        }
+    }
+
+    /**
+     * The outcome of a broadcast. UIs closed in the meantime are left out.
+     */
+    public static final class Result {
+        private final Map<UI, Long> nanos = new ConcurrentHashMap<UI, Long>();
+        private final Map<UI, RuntimeException> failures = new ConcurrentHashMap<UI, RuntimeException>();
+        private final AtomicInteger updatedComponents = new AtomicInteger();
+
+        private Result() {
+        }
+
+        /**
+         * The time each UI took to update once its session was locked.
+         */
+        public Map<UI, Long> getNanos() {
+            return Collections.unmodifiableMap(nanos);
+        }
+
+        public Map<UI, RuntimeException> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        public int getUpdatedComponents() {
+            return updatedComponents.get();
+        }
+    }
+}
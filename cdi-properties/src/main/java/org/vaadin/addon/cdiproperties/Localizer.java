@@ -1,14 +1,22 @@
 package org.vaadin.addon.cdiproperties;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
-import java.util.HashMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.event.Observes;
 import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.UnsatisfiedResolutionException;
@@ -16,8 +24,12 @@ import javax.inject.Inject;
 import javax.inject.Qualifier;
 
 import com.vaadin.cdi.UIScoped;
+import com.vaadin.server.ClientConnector.AttachEvent;
+import com.vaadin.server.ClientConnector.AttachListener;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
 import com.vaadin.ui.AbstractComponent;
 
 @SuppressWarnings("serial")
@@ -27,53 +39,363 @@ public class Localizer implements Serializable {
     @Inject
     private Instance<TextBundle> textBundle;
 
-    private final Map<Component, String> localizedCaptions = new HashMap<Component, String>();
-    private final Map<Label, String> localizedLabelValues = new HashMap<Label, String>();
-    private final Map<AbstractComponent, String> localizedDescriptions = new HashMap<AbstractComponent, String>();
+    @Inject
+    private SharedTranslations sharedTranslations;
+
+    @Inject
+    private Metrics metrics;
+
+    @Inject
+    private LocalizationBroadcaster broadcaster;
+
+    @Inject
+    private UpdateScheduler updateScheduler;
+
+    // The UI registered with the broadcaster
+    private UI ui;
+    // False after deserialization, the broadcaster does not keep its
+    // registrations
+    private transient boolean registered;
+
+    // Weak so that registration does not keep removed components alive
+    private final WeakIdentityMap<Component, Binding> bindings = new WeakIdentityMap<Component, Binding>();
+
+    // Incremented on each TextBundleUpdated event
+    private int localeVersion;
+
+    // Set while a coalesced or throttled pass is scheduled
+    private boolean passPending;
+    private long lastPass;
+    // The keys the next pass updates, null for all
+    private Set<String> changedKeys;
+
+    @PostConstruct
+    void register() {
+        ui = UI.getCurrent();
+        if (ui != null) {
+            broadcaster.register(ui, this);
+            registered = true;
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        try {
+            reregister();
+        } catch (final RuntimeException e) {
+            // The container is not available yet, done on the next event or
+            // localized component instead
+        }
+    }
+
+    private void reregister() {
+        if (!registered && ui != null) {
+            broadcaster.reregister(ui, this);
+            registered = true;
+        }
+    }
 
     void updateCaption(@Observes @TextBundleUpdated final Object parameters) {
-        for (final Entry<Component, String> entry : localizedCaptions
-                .entrySet()) {
-            try {
-                entry.getKey().setCaption(
-                        textBundle.get().getText(entry.getValue()));
-            } catch (final UnsatisfiedResolutionException e) {
-                entry.getKey()
-                        .setCaption("No TextBundle implementation found!");
+        reregister();
+        // The caches invalidate themselves, once per event
+        final Set<String> keys = getKeys(parameters);
+        localeVersion++;
+
+        if (passPending) {
+            // Covered by the pass already scheduled
+            mergeChangedKeys(keys);
+            return;
+        }
+        changedKeys = keys != null ? new HashSet<String>(keys) : null;
+        final UI ui = UI.getCurrent();
+        final long delay = lastPass + Options.UPDATE_THROTTLE
+                - System.currentTimeMillis();
+        if (ui != null && Options.UPDATE_THROTTLE > 0 && delay > 0) {
+            passPending = true;
+            updateScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    access(ui);
+                }
+            }, delay);
+        } else if (ui != null
+                && (Options.COALESCE_UPDATES || keys != null
+                        && (Options.TEXT_CACHE || Options.SHARED_TRANSLATIONS))) {
+            // Runs once the current request or access is done, i.e. after
+            // the caches have dropped the changed keys as well
+            passPending = true;
+            access(ui);
+        } else {
+            relocalizeAll();
+        }
+    }
+
+    /**
+     * Runs a pass right away for the {@link LocalizationBroadcaster}, which
+     * has already invalidated the caches. Must be called with the session
+     * locked. Returns the number of updated components.
+     */
+    int relocalizeNow(final Object parameters) {
+        final Set<String> keys = getKeys(parameters);
+        localeVersion++;
+        if (passPending) {
+            // Done here instead of in the scheduled pass
+            mergeChangedKeys(keys);
+        } else {
+            changedKeys = keys != null ? new HashSet<String>(keys) : null;
+        }
+        return relocalizeAll();
+    }
+
+    private static Set<String> getKeys(final Object parameters) {
+        return parameters instanceof TextBundleChange ? ((TextBundleChange) parameters)
+                .getKeys() : null;
+    }
+
+    private void mergeChangedKeys(final Set<String> keys) {
+        if (changedKeys != null) {
+            if (keys != null) {
+                changedKeys.addAll(keys);
+            } else {
+                changedKeys = null;
             }
         }
+    }
 
-        for (final Entry<Label, String> entry : localizedLabelValues.entrySet()) {
-            try {
-                entry.getKey().setValue(
-                        textBundle.get().getText(entry.getValue()));
-            } catch (final UnsatisfiedResolutionException e) {
-                entry.getKey()
-                        .setCaption("No TextBundle implementation found!");
+    private void access(final UI ui) {
+        try {
+            ui.access(new Runnable() {
+                @Override
+                public void run() {
+                    // Unless a broadcast did the pass in the meantime
+                    if (passPending) {
+                        relocalizeAll();
+                    }
+                }
+            });
+        } catch (final UIDetachedException e) {
+            // Ignore, the UI is gone
+            passPending = false;
+        }
+    }
+
+    private int relocalizeAll() {
+        final long start = Options.METRICS ? System.nanoTime() : 0;
+        passPending = false;
+        lastPass = System.currentTimeMillis();
+        final Set<String> keys = changedKeys;
+        changedKeys = null;
+
+        final List<Entry<Component, Binding>> entries = new ArrayList<Entry<Component, Binding>>();
+        int skipped = 0;
+        for (final Entry<Component, Binding> entry : bindings.entries()) {
+            if (keys != null && !entry.getValue().uses(keys)) {
+                // Not affected by the change
+                skipped++;
+            } else if (Options.LAZY_RELOCALIZATION
+                    && !entry.getKey().isAttached()) {
+                refreshOnAttach(entry.getKey(), entry.getValue());
+                skipped++;
+            } else {
+                entries.add(entry);
             }
         }
+        final int updated = relocalize(entries);
 
-        for (final Entry<AbstractComponent, String> entry : localizedDescriptions.entrySet()) {
+        if (Options.METRICS) {
+            metrics.localeChanged(updated, skipped + entries.size()
+                    - updated, System.nanoTime() - start);
+        }
+        return updated;
+    }
+
+    /**
+     * Applies the current texts to the given components, leaving alone the
+     * texts that did not change. Returns the number of updated components.
+     */
+    private int relocalize(final List<Entry<Component, Binding>> entries) {
+        // Resolve each distinct key once
+        final Set<String> keys = new HashSet<String>();
+        for (final Entry<Component, Binding> entry : entries) {
+            entry.getValue().collectKeys(keys);
+        }
+        Map<String, String> texts = null;
+        if (!keys.isEmpty()) {
             try {
-                entry.getKey().setDescription(
-                        textBundle.get().getText(entry.getValue()));
+                texts = sharedTranslations.getTexts(textBundle.get(), keys);
             } catch (final UnsatisfiedResolutionException e) {
-                entry.getKey()
-                        .setDescription("No TextBundle implementation found!");
+                // Reported on each component below
+            }
+        }
+
+        int updated = 0;
+        for (final Entry<Component, Binding> entry : entries) {
+            final Component component = entry.getKey();
+            final Binding binding = entry.getValue();
+            boolean changed = false;
+
+            if (binding.captionKey != null) {
+                final String text = texts != null ? format(
+                        texts.get(binding.captionKey), binding.captionParams)
+                        : "No TextBundle implementation found!";
+                if (!equals(text, binding.caption)) {
+                    component.setCaption(text);
+                    binding.caption = text;
+                    changed = true;
+                }
+            }
+
+            if (binding.valueKey != null) {
+                if (texts != null) {
+                    final String text = format(texts.get(binding.valueKey),
+                            binding.valueParams);
+                    if (!equals(text, binding.value)) {
+                        ((Label) component).setValue(text);
+                        binding.value = text;
+                        changed = true;
+                    }
+                } else {
+                    component.setCaption("No TextBundle implementation found!");
+                    binding.caption = component.getCaption();
+                    changed = true;
+                }
+            }
+
+            if (binding.descriptionKey != null) {
+                final String text = texts != null ? format(
+                        texts.get(binding.descriptionKey),
+                        binding.descriptionParams)
+                        : "No TextBundle implementation found!";
+                if (!equals(text, binding.description)) {
+                    ((AbstractComponent) component).setDescription(text);
+                    binding.description = text;
+                    changed = true;
+                }
+            }
+
+            binding.version = localeVersion;
+            if (changed) {
+                updated++;
             }
         }
+        return updated;
+    }
+
+    private String format(final String text, final String[] params) {
+        return params == null || params.length == 0 ? text
+                : sharedTranslations.format(text, params);
     }
 
-    void addLocalizedCaption(final Component component, final String captionKey) {
-        localizedCaptions.put(component, captionKey);
+    private static boolean equals(final String a, final String b) {
+        return a == null ? b == null : a.equals(b);
     }
 
-    void addLocalizedLabelValue(final Label label, final String labelValueKey) {
-        localizedLabelValues.put(label, labelValueKey);
+    private void refreshOnAttach(final Component component,
+            final Binding binding) {
+        if (!binding.refreshOnAttach) {
+            binding.refreshOnAttach = true;
+            component.addAttachListener(new RefreshOnAttach());
+        }
     }
 
-    void addLocalizedDescription(final AbstractComponent field, final String descriptionKey) {
-        localizedDescriptions.put(field, descriptionKey);
+    // The texts are applied before registration, so the current ones are
+    // the last applied
+
+    void addLocalizedCaption(final Component component,
+            final String captionKey, final String[] params) {
+        final Binding binding = getBinding(component);
+        binding.captionKey = captionKey;
+        binding.captionParams = params;
+        binding.caption = component.getCaption();
+    }
+
+    void addLocalizedLabelValue(final Label label, final String labelValueKey,
+            final String[] params) {
+        final Binding binding = getBinding(label);
+        binding.valueKey = labelValueKey;
+        binding.valueParams = params;
+        binding.value = label.getValue();
+    }
+
+    void addLocalizedDescription(final AbstractComponent field,
+            final String descriptionKey, final String[] params) {
+        final Binding binding = getBinding(field);
+        binding.descriptionKey = descriptionKey;
+        binding.descriptionParams = params;
+        binding.description = field.getDescription();
+    }
+
+    /**
+     * Stops updating the texts of the given component on
+     * {@link TextBundleUpdated} events.
+     */
+    public void unregister(final Component component) {
+        bindings.remove(component);
+    }
+
+    private Binding getBinding(final Component component) {
+        reregister();
+        Binding binding = bindings.get(component);
+        if (binding == null) {
+            binding = new Binding();
+            binding.version = localeVersion;
+            bindings.put(component, binding);
+        }
+        return binding;
+    }
+
+    /**
+     * Refreshes a component that was detached during a locale change once it
+     * is attached again.
+     */
+    private class RefreshOnAttach implements AttachListener {
+        @Override
+        public void attach(final AttachEvent event) {
+            final Component component = (Component) event.getConnector();
+            final Binding binding = bindings.get(component);
+            if (binding != null && binding.version != localeVersion) {
+                final Entry<Component, Binding> entry = new SimpleImmutableEntry<Component, Binding>(
+                        component, binding);
+                relocalize(Collections.singletonList(entry));
+            }
+        }
+    }
+
+    private static class Binding implements Serializable {
+        private String captionKey;
+        private String valueKey;
+        private String descriptionKey;
+        // MessageFormat arguments of the texts, if any
+        private String[] captionParams;
+        private String[] valueParams;
+        private String[] descriptionParams;
+        // The texts last applied, compared to skip unchanged ones
+        private String caption;
+        private String value;
+        private String description;
+        // The locale version the texts were last applied for
+        private int version;
+        private boolean refreshOnAttach;
+
+        private boolean uses(final Set<String> keys) {
+            return captionKey != null && keys.contains(captionKey)
+                    || valueKey != null && keys.contains(valueKey)
+                    || descriptionKey != null
+                    && keys.contains(descriptionKey);
+        }
+
+        private void collectKeys(final Set<String> keys) {
+            if (captionKey != null) {
+                keys.add(captionKey);
+            }
+            if (valueKey != null) {
+                keys.add(valueKey);
+            }
+            if (descriptionKey != null) {
+                keys.add(descriptionKey);
+            }
+        }
     }
 
     @Qualifier
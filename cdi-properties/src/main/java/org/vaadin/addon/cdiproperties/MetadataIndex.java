@@ -0,0 +1,128 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The write methods of the Vaadin components, recorded by the generator in
+ * {@value #RESOURCE} so that {@link PropertyPlan} does not need to introspect
+ * them. Loaded on first use.
+ */
+final class MetadataIndex {
+
+    static final String RESOURCE = "META-INF/cdi-properties/metadata.idx";
+
+    private static final int MAGIC = 0x43445049;
+    private static final int VERSION = 1;
+
+    private MetadataIndex() {
+    }
+
+    /**
+     * Returns the write methods of the given class by property name, or null
+     * if the class is not indexed.
+     */
+    static Map<String, Method> getWriteMethods(Class<?> componentClass) {
+        final Entry[] entries = Holder.INDEX.get(componentClass.getName());
+        if (entries == null) {
+            return null;
+        }
+        final Map<String, Method> writeMethods = new HashMap<String, Method>(
+                entries.length * 2);
+        try {
+            for (Entry entry : entries) {
+                writeMethods.put(entry.property, componentClass.getMethod(
+                        entry.setter,
+                        resolve(entry.type, componentClass.getClassLoader())));
+            }
+        } catch (NoSuchMethodException e) {
+            // The index does not match the component version
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        return writeMethods;
+    }
+
+    private static Class<?> resolve(String type, ClassLoader classLoader)
+            throws ClassNotFoundException {
+        if (type.equals("boolean")) {
+            return boolean.class;
+        } else if (type.equals("int")) {
+            return int.class;
+        } else if (type.equals("float")) {
+            return float.class;
+        } else if (type.equals("double")) {
+            return double.class;
+        } else if (type.equals("long")) {
+            return long.class;
+        } else if (type.equals("short")) {
+            return short.class;
+        } else if (type.equals("byte")) {
+            return byte.class;
+        } else if (type.equals("char")) {
+            return char.class;
+        }
+        return Class.forName(type, false, classLoader);
+    }
+
+    private static Map<String, Entry[]> load() {
+        final InputStream in = MetadataIndex.class.getClassLoader()
+                .getResourceAsStream(RESOURCE);
+        if (in == null) {
+            return Collections.emptyMap();
+        }
+        try {
+            final DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != MAGIC || data.readShort() != VERSION) {
+                return Collections.emptyMap();
+            }
+            final String[] types = new String[data.readShort()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = data.readUTF();
+            }
+            final int classCount = data.readShort();
+            final Map<String, Entry[]> index = new HashMap<String, Entry[]>(
+                    classCount * 2);
+            for (int i = 0; i < classCount; i++) {
+                final String className = data.readUTF();
+                final Entry[] entries = new Entry[data.readShort()];
+                for (int j = 0; j < entries.length; j++) {
+                    entries[j] = new Entry(data.readUTF(), data.readUTF(),
+                            types[data.readShort()]);
+                }
+                index.put(className, entries);
+            }
+            return index;
+        } catch (IOException e) {
+            return Collections.emptyMap();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static final class Holder {
+        private static final Map<String, Entry[]> INDEX = load();
+    }
+
+    private static final class Entry {
+        private final String property;
+        private final String setter;
+        private final String type;
+
+        private Entry(String property, String setter, String type) {
+            this.property = property;
+            this.setter = setter;
+            this.type = type;
+        }
+    }
+}
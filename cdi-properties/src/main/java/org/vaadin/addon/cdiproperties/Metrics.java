@@ -0,0 +1,305 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Counters and latency histograms of component configuration, text lookups
+ * and locale changes, registered as the MXBean
+ * {@code org.vaadin.addon.cdiproperties:type=Metrics}. Nothing is recorded
+ * unless {@code -Dorg.vaadin.addon.cdiproperties.metrics=true} is set, in
+ * which case the registered {@link MetricsListener}s are notified as well.
+ */
+@SuppressWarnings("serial")
+@ApplicationScoped
+public class Metrics implements MetricsMXBean, Serializable {
+
+    // Bucket i counts operations taking less than 2^i microseconds
+    private static final int BUCKETS = 24;
+
+    @Inject
+    private Instance<MetricsListener> listeners;
+
+    private transient volatile MetricsListener[] registeredListeners;
+    private transient ObjectName objectName;
+
+    private final ConcurrentMap<Class<?>, Timer> injections = new ConcurrentHashMap<Class<?>, Timer>();
+    private final ConcurrentMap<Class<?>, Timer> components = new ConcurrentHashMap<Class<?>, Timer>();
+    private final ConcurrentMap<Class<?>, Timer> customProperties = new ConcurrentHashMap<Class<?>, Timer>();
+    private final Timer textLookups = new Timer();
+    private final LongAdder textKeys = new LongAdder();
+    private final Timer localeChanges = new Timer();
+    private final LongAdder updatedComponents = new LongAdder();
+    private final LongAdder skippedComponents = new LongAdder();
+
+    @PostConstruct
+    void register() {
+        if (!Options.METRICS) {
+            return;
+        }
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            // One instance per application deployed in the JVM
+            final ObjectName name = new ObjectName(
+                    "org.vaadin.addon.cdiproperties:type=Metrics,name="
+                            + Integer.toHexString(System.identityHashCode(this)));
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            // Ignore, metrics are still passed to the listeners
+        }
+    }
+
+    @PreDestroy
+    void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                        objectName);
+            } catch (JMException e) {
+                // Ignore
+            }
+            objectName = null;
+        }
+    }
+
+    void componentConfigured(Class<? extends Annotation> annotationType,
+            Class<? extends Component> componentClass, long nanos) {
+        timer(injections, annotationType).record(nanos);
+        timer(components, componentClass).record(nanos);
+        for (MetricsListener listener : getListeners()) {
+            listener.componentConfigured(annotationType, componentClass, nanos);
+        }
+    }
+
+    void customPropertyApplied(CustomProperty customProperty,
+            Class<? extends Component> componentClass, long nanos) {
+        timer(customProperties, customProperty.getClass()).record(nanos);
+        for (MetricsListener listener : getListeners()) {
+            listener.customPropertyApplied(customProperty, componentClass,
+                    nanos);
+        }
+    }
+
+    void textsResolved(int keys, long nanos) {
+        textLookups.record(nanos);
+        textKeys.add(keys);
+        for (MetricsListener listener : getListeners()) {
+            listener.textsResolved(keys, nanos);
+        }
+    }
+
+    void localeChanged(int updated, int skipped, long nanos) {
+        localeChanges.record(nanos);
+        updatedComponents.add(updated);
+        skippedComponents.add(skipped);
+        for (MetricsListener listener : getListeners()) {
+            listener.localeChanged(updated, skipped, nanos);
+        }
+    }
+
+    private static Timer timer(ConcurrentMap<Class<?>, Timer> timers,
+            Class<?> key) {
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = new Timer();
+            final Timer existing = timers.putIfAbsent(key, timer);
+            if (existing != null) {
+                timer = existing;
+            }
+        }
+        return timer;
+    }
+
+    private MetricsListener[] getListeners() {
+        MetricsListener[] result = registeredListeners;
+        if (result == null) {
+            final List<MetricsListener> registered = new ArrayList<MetricsListener>();
+            if (listeners != null) {
+                for (MetricsListener listener : listeners) {
+                    registered.add(listener);
+                }
+            }
+            result = registered.toArray(new MetricsListener[0]);
+            registeredListeners = result;
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getInjectionCounts() {
+        final Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<Class<?>, Timer> entry : injections.entrySet()) {
+            result.put(entry.getKey().getName(), entry.getValue().count.sum());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getInjectionMeanMicros() {
+        return meanMicros(injections);
+    }
+
+    @Override
+    public Map<String, long[]> getInjectionHistograms() {
+        final Map<String, long[]> result = new TreeMap<String, long[]>();
+        for (Map.Entry<Class<?>, Timer> entry : injections.entrySet()) {
+            result.put(entry.getKey().getName(), entry.getValue().histogram());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getComponentCounts() {
+        final Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<Class<?>, Timer> entry : components.entrySet()) {
+            result.put(entry.getKey().getName(), entry.getValue().count.sum());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getComponentMeanMicros() {
+        return meanMicros(components);
+    }
+
+    @Override
+    public Map<String, Double> getCustomPropertyMeanMicros() {
+        return meanMicros(customProperties);
+    }
+
+    private static Map<String, Double> meanMicros(
+            ConcurrentMap<Class<?>, Timer> timers) {
+        final Map<String, Double> result = new TreeMap<String, Double>();
+        for (Map.Entry<Class<?>, Timer> entry : timers.entrySet()) {
+            result.put(entry.getKey().getName(), entry.getValue().meanMicros());
+        }
+        return result;
+    }
+
+    @Override
+    public long getTextLookups() {
+        return textLookups.count.sum();
+    }
+
+    @Override
+    public long getTextKeys() {
+        return textKeys.sum();
+    }
+
+    @Override
+    public double getTextLookupMeanMicros() {
+        return textLookups.meanMicros();
+    }
+
+    @Override
+    public long getLocaleChanges() {
+        return localeChanges.count.sum();
+    }
+
+    @Override
+    public long getLocalizedComponents() {
+        return updatedComponents.sum() + skippedComponents.sum();
+    }
+
+    @Override
+    public long getUpdatedComponents() {
+        return updatedComponents.sum();
+    }
+
+    @Override
+    public long getSkippedComponents() {
+        return skippedComponents.sum();
+    }
+
+    @Override
+    public double getLocaleChangeMeanMicros() {
+        return localeChanges.meanMicros();
+    }
+
+    @Override
+    public long[] getLocaleChangeHistogram() {
+        return localeChanges.histogram();
+    }
+
+    @Override
+    public long[] getHistogramBoundsMicros() {
+        final long[] bounds = new long[BUCKETS - 1];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = 1L << i;
+        }
+        return bounds;
+    }
+
+    @Override
+    public void reset() {
+        injections.clear();
+        components.clear();
+        customProperties.clear();
+        textLookups.reset();
+        textKeys.reset();
+        localeChanges.reset();
+        updatedComponents.reset();
+        skippedComponents.reset();
+    }
+
+    private static final class Timer implements Serializable {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        private Timer() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            final long micros = nanos / 1000;
+            buckets[Math.min(BUCKETS - 1,
+                    64 - Long.numberOfLeadingZeros(micros))].increment();
+        }
+
+        private double meanMicros() {
+            final long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1000d / n;
+        }
+
+        private long[] histogram() {
+            final long[] result = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                result[i] = buckets[i].sum();
+            }
+            return result;
+        }
+
+        private void reset() {
+            count.reset();
+            totalNanos.reset();
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+    }
+}
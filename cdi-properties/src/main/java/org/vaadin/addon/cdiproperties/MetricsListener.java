@@ -0,0 +1,43 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.lang.annotation.Annotation;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Receives the timings recorded when metrics are enabled with
+ * {@code -Dorg.vaadin.addon.cdiproperties.metrics=true}. Add a CDI bean
+ * implementing this interface to forward them to your own monitoring system.
+ * Methods are called on the request thread and should return quickly.
+ */
+public interface MetricsListener {
+
+    /**
+     * A component was created and configured for an injection point.
+     */
+    default void componentConfigured(
+            Class<? extends Annotation> annotationType,
+            Class<? extends Component> componentClass, long nanos) {
+    }
+
+    /**
+     * A custom property was applied to a component.
+     */
+    default void customPropertyApplied(CustomProperty customProperty,
+            Class<? extends Component> componentClass, long nanos) {
+    }
+
+    /**
+     * Texts were resolved from the {@link TextBundle}.
+     */
+    default void textsResolved(int keys, long nanos) {
+    }
+
+    /**
+     * The texts of a UI were updated after a locale change. Skipped
+     * components were left untouched: they already showed the new texts,
+     * were not bound to the changed keys or are updated on their next attach.
+     */
+    default void localeChanged(int updated, int skipped, long nanos) {
+    }
+}
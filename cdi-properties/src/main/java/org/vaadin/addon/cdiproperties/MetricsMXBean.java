@@ -0,0 +1,49 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link Metrics}. Times are in microseconds;
+ * histograms count the operations per bucket of
+ * {@link #getHistogramBoundsMicros()}.
+ */
+public interface MetricsMXBean {
+
+    Map<String, Long> getInjectionCounts();
+
+    Map<String, Double> getInjectionMeanMicros();
+
+    Map<String, long[]> getInjectionHistograms();
+
+    Map<String, Long> getComponentCounts();
+
+    Map<String, Double> getComponentMeanMicros();
+
+    Map<String, Double> getCustomPropertyMeanMicros();
+
+    long getTextLookups();
+
+    long getTextKeys();
+
+    double getTextLookupMeanMicros();
+
+    long getLocaleChanges();
+
+    long getLocalizedComponents();
+
+    long getUpdatedComponents();
+
+    long getSkippedComponents();
+
+    double getLocaleChangeMeanMicros();
+
+    long[] getLocaleChangeHistogram();
+
+    /**
+     * The exclusive upper bounds of the histogram buckets. The last bucket
+     * has no upper bound.
+     */
+    long[] getHistogramBoundsMicros();
+
+    void reset();
+}
@@ -0,0 +1,80 @@
+package org.vaadin.addon.cdiproperties;
+
+/**
+ * Runtime options, read once from system properties prefixed with
+ * {@code org.vaadin.addon.cdiproperties.}.
+ */
+final class Options {
+
+    private static final String PREFIX = "org.vaadin.addon.cdiproperties.";
+
+    /**
+     * Only invoke setters whose annotation value differs from the value of a
+     * freshly created component.
+     */
+    static final boolean SKIP_DEFAULT_VALUES = Boolean.getBoolean(PREFIX
+            + "skipDefaultValues");
+
+    /**
+     * Serve texts from the node-wide {@link TextBundleCache} in
+     * {@link CachingTextBundle}. Requires the texts to depend on the locale
+     * only.
+     */
+    static final boolean TEXT_CACHE = Boolean.getBoolean(PREFIX + "textCache");
+
+    /**
+     * Maximum number of texts per locale kept by the {@link TextBundleCache}.
+     */
+    static final int TEXT_CACHE_SIZE = Integer.getInteger(PREFIX
+            + "textCacheSize", 1000);
+
+    /**
+     * Resolve texts through the application-wide {@link SharedTranslations}.
+     */
+    static final boolean SHARED_TRANSLATIONS = Boolean.getBoolean(PREFIX
+            + "sharedTranslations");
+
+    /**
+     * Only re-localize attached components on a locale change. Detached
+     * components are refreshed when they are attached again.
+     */
+    static final boolean LAZY_RELOCALIZATION = Boolean.getBoolean(PREFIX
+            + "lazyRelocalization");
+
+    /**
+     * Build the property snapshots of all injection points when the
+     * deployment is validated. Enabled unless set to false.
+     */
+    static final boolean PREWARM = !"false".equals(System.getProperty(PREFIX
+            + "prewarm"));
+
+    /**
+     * Record counters and timings in {@link Metrics} and notify the
+     * {@link MetricsListener}s.
+     */
+    static final boolean METRICS = Boolean.getBoolean(PREFIX + "metrics");
+
+    /**
+     * Run a single re-localization pass for all {@link TextBundleUpdated}
+     * events fired during one request or UI access.
+     */
+    static final boolean COALESCE_UPDATES = Boolean.getBoolean(PREFIX
+            + "coalesceUpdates");
+
+    /**
+     * Minimum number of milliseconds between two re-localization passes of a
+     * UI. Updates arriving earlier are merged into one delayed pass.
+     */
+    static final long UPDATE_THROTTLE = Long.getLong(
+            PREFIX + "updateThrottle", 0);
+
+    /**
+     * Number of threads of the {@link LocalizationBroadcaster}, by default
+     * one per processor. Virtual threads are used where available.
+     */
+    static final int BROADCAST_THREADS = Integer.getInteger(PREFIX
+            + "broadcastThreads", Runtime.getRuntime().availableProcessors());
+
+    private Options() {
+    }
+}
@@ -0,0 +1,106 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import javax.enterprise.inject.spi.AnnotatedParameter;
+import javax.enterprise.inject.spi.InjectionPoint;
+
+/**
+ * Lookup of the {@link PrecompiledConfigurator}s registered through
+ * {@link PrecompiledConfigurators} services.
+ */
+final class Precompiled {
+
+    private static volatile Map<String, PrecompiledConfigurator> registry;
+
+    private Precompiled() {
+    }
+
+    /**
+     * Returns the precompiled configurator of the given injection point, or
+     * null if there is none.
+     */
+    static PrecompiledConfigurator find(InjectionPoint ip) {
+        final Member member = ip.getMember();
+        if (member == null) {
+            return null;
+        }
+        final Map<String, PrecompiledConfigurator> configurators = getRegistry();
+        if (configurators.isEmpty()) {
+            return null;
+        }
+        final int position = ip.getAnnotated() instanceof AnnotatedParameter ? ((AnnotatedParameter<?>) ip
+                .getAnnotated()).getPosition() : -1;
+        return configurators.get(key(member, position));
+    }
+
+    /**
+     * Loads the registry with the context class loader of the calling thread.
+     */
+    static void load() {
+        getRegistry();
+    }
+
+    static String key(Member member, int position) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(member.getDeclaringClass().getName()).append('#');
+        if (member instanceof Field) {
+            sb.append(member.getName());
+            return sb.toString();
+        }
+
+        Class<?>[] parameterTypes;
+        if (member instanceof Constructor) {
+            sb.append("<init>");
+            parameterTypes = ((Constructor<?>) member).getParameterTypes();
+        } else {
+            sb.append(member.getName());
+            parameterTypes = ((Method) member).getParameterTypes();
+        }
+        sb.append('(');
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(typeName(parameterTypes[i]));
+        }
+        sb.append("):").append(position);
+        return sb.toString();
+    }
+
+    private static String typeName(Class<?> type) {
+        return type.isArray() ? typeName(type.getComponentType()) + "[]"
+                : type.getName();
+    }
+
+    private static Map<String, PrecompiledConfigurator> getRegistry() {
+        Map<String, PrecompiledConfigurator> result = registry;
+        if (result == null) {
+            final Map<String, PrecompiledConfigurator> loaded = new HashMap<String, PrecompiledConfigurator>();
+            final Iterator<PrecompiledConfigurators> iterator = ServiceLoader
+                    .load(PrecompiledConfigurators.class).iterator();
+            while (true) {
+                try {
+                    if (!iterator.hasNext()) {
+                        break;
+                    }
+                    iterator.next().register(loaded);
+                } catch (ServiceConfigurationError e) {
+                    // Stale entry left by an incremental build, skip it
+                }
+            }
+            result = Collections.unmodifiableMap(loaded);
+            registry = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,12 @@
+package org.vaadin.addon.cdiproperties;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Creates the component of one injection point with the setter values of its
+ * property annotation inlined. Generated by the cdi-properties-processor
+ * annotation processor; custom properties are still applied at runtime.
+ */
+public interface PrecompiledConfigurator {
+    Component create();
+}
@@ -0,0 +1,20 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.util.Map;
+
+/**
+ * Registers the {@link PrecompiledConfigurator}s generated for the injection
+ * points of one class. Implementations are generated by the
+ * cdi-properties-processor annotation processor and listed in
+ * META-INF/services.
+ */
+public interface PrecompiledConfigurators {
+
+    /**
+     * Adds the configurators to the registry, keyed by injection point. A
+     * field is keyed as {@code com.example.View#field}, a parameter as
+     * {@code com.example.View#method(java.lang.String,int):1} with
+     * {@code <init>} as the name of constructors.
+     */
+    void register(Map<String, PrecompiledConfigurator> registry);
+}
@@ -0,0 +1,168 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.spi.AfterDeploymentValidation;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.Extension;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.enterprise.inject.spi.ProcessInjectionTarget;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Collects the injection points carrying a property annotation and builds
+ * their {@link PropertyValues} snapshots in parallel once the deployment is
+ * validated, so that the first requests after a deployment do not pay for
+ * introspection and class loading. Invalid attribute values are reported as
+ * deployment problems.
+ */
+public class PropertiesExtension implements Extension {
+
+    private static final String ANNOTATION_PACKAGE = "org.vaadin.addon.cdiproperties.annotation";
+
+    // Attributes applied by the custom properties
+    private static final Set<String> CUSTOM_ATTRIBUTES = new HashSet<String>(
+            Arrays.asList("implementation", "widthValue", "heightValue",
+                    "widthUnits", "heightUnits", "width", "height",
+                    "captionKey", "descriptionKey", "valueKey", "sizeFull",
+                    "sizeUndefined", "localized", "styleName", "margin",
+                    "lazy", "captionParams", "valueParams",
+                    "descriptionParams"));
+
+    private final List<Target> targets = new ArrayList<Target>();
+
+    <T> void collect(@Observes final ProcessInjectionTarget<T> event) {
+        for (final InjectionPoint ip : event.getInjectionTarget()
+                .getInjectionPoints()) {
+            for (final Annotation qualifier : ip.getQualifiers()) {
+                final Package pkg = qualifier.annotationType().getPackage();
+                if (pkg != null && ANNOTATION_PACKAGE.equals(pkg.getName())) {
+                    targets.add(new Target(ip, qualifier));
+                }
+            }
+        }
+    }
+
+    void captureBeanManager(@Observes final AfterDeploymentValidation event,
+            final BeanManager beanManager) {
+        Beans.setBeanManager(beanManager);
+    }
+
+    void prewarm(@Observes final AfterDeploymentValidation event) {
+        if (!Options.PREWARM || targets.isEmpty()) {
+            targets.clear();
+            return;
+        }
+
+        // The pool threads may not see the application class loader
+        Precompiled.load();
+
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            final List<Future<List<String>>> results = pool.invokeAll(targets);
+            for (final Future<List<String>> result : results) {
+                try {
+                    for (final String problem : result.get()) {
+                        event.addDeploymentProblem(new IllegalArgumentException(
+                                problem));
+                    }
+                } catch (final ExecutionException e) {
+                    event.addDeploymentProblem(e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+            targets.clear();
+        }
+    }
+
+    private static class Target implements Callable<List<String>> {
+        private final InjectionPoint ip;
+        private final Annotation annotation;
+
+        private Target(final InjectionPoint ip, final Annotation annotation) {
+            this.ip = ip;
+            this.annotation = annotation;
+        }
+
+        @Override
+        public List<String> call() throws Exception {
+            final List<String> problems = new ArrayList<String>();
+            final PropertyValues values = PropertyValues.get(ip, annotation);
+
+            if (values.isSizeFull() && values.isSizeUndefined()) {
+                problems.add(describe()
+                        + ": sizeFull and sizeUndefined are mutually exclusive");
+            }
+            final boolean[] margin = (boolean[]) values.get("margin");
+            if (margin != null && margin.length > 4) {
+                problems.add(describe() + ": margin accepts at most four values");
+            }
+
+            final Class<? extends Component> implementation = values
+                    .getImplementation();
+            if (implementation == null) {
+                return problems;
+            }
+            if (!isInstantiable(implementation)) {
+                problems.add(describe() + ": " + implementation.getName()
+                        + " has no public no-arg constructor");
+                return problems;
+            }
+
+            final PropertyPlan plan = PropertyPlan.get(implementation,
+                    annotation.annotationType());
+            for (final Method attribute : annotation.annotationType()
+                    .getDeclaredMethods()) {
+                final String name = attribute.getName();
+                if (CUSTOM_ATTRIBUTES.contains(name) || plan.maps(name)) {
+                    continue;
+                }
+                final Object value = values.get(name);
+                if (value != null && !value.equals(attribute.getDefaultValue())) {
+                    problems.add(describe() + ": attribute " + name
+                            + " does not map to a setter of "
+                            + implementation.getName());
+                }
+            }
+            return problems;
+        }
+
+        private static boolean isInstantiable(final Class<?> implementation) {
+            if (Modifier.isAbstract(implementation.getModifiers())) {
+                return false;
+            }
+            try {
+                implementation.getConstructor();
+                return Modifier.isPublic(implementation.getModifiers());
+            } catch (final NoSuchMethodException e) {
+                return false;
+            }
+        }
+
+        private String describe() {
+            final Member member = ip.getMember();
+            final String location = member == null ? String.valueOf(ip)
+                    : member.getDeclaringClass().getName() + "."
+                            + member.getName();
+            return "@" + annotation.annotationType().getSimpleName() + " at "
+                    + location;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.shared.Registration;
+
+/**
+ * A {@link TextBundle} reading <code>baseName_language_COUNTRY.properties</code>
+ * files from a directory, falling back to less specific files as
+ * {@link java.util.ResourceBundle} does. The files are watched for changes,
+ * and each change is parsed again and compared key by key with the previous
+ * contents. The listeners receive the keys that changed, to be passed on as a
+ * {@link TextBundleChange} in a {@link Localizer.TextBundleUpdated} event:
+ *
+ * <pre>
+ * bundle.addChangeListener(change -&gt; ui.access(() -&gt; textBundleUpdated
+ *         .fire(change)));
+ * </pre>
+ *
+ * Files are read as UTF-8, or as ISO-8859-1 if they are not valid UTF-8, as
+ * {@link java.util.PropertyResourceBundle} does since Java 9. Missing keys
+ * are returned as is.
+ */
+public class PropertiesFileTextBundle implements TextBundle, Closeable {
+
+    /**
+     * Notified on the watcher thread when texts change.
+     */
+    public interface ChangeListener {
+        void textBundleChanged(TextBundleChange change);
+    }
+
+    private static final long QUIET_PERIOD = 100;
+
+    private final Path directory;
+    private final String baseName;
+    private final WatchService watchService;
+
+    // The texts of each file looked up so far, empty for missing files
+    private final ConcurrentMap<String, Map<String, String>> files = new ConcurrentHashMap<String, Map<String, String>>();
+    private final CopyOnWriteArrayList<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+
+    public PropertiesFileTextBundle(Path directory, String baseName)
+            throws IOException {
+        this.directory = directory;
+        this.baseName = baseName;
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+        final Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "cdi-properties-bundle-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public String getText(String key, Object... params) {
+        String text = null;
+        for (String fileName : getFileNames(TextBundleCache.currentLocale())) {
+            text = getTexts(fileName).get(key);
+            if (text != null) {
+                break;
+            }
+        }
+        if (text == null) {
+            return key;
+        }
+        return params == null || params.length == 0 ? text : MessageFormat
+                .format(text, params);
+    }
+
+    @Override
+    public Map<String, String> getTexts(Set<String> keys) {
+        final String[] fileNames = getFileNames(TextBundleCache
+                .currentLocale());
+        final Map<String, String> texts = new HashMap<String, String>(
+                keys.size() * 2);
+        for (String key : keys) {
+            String text = null;
+            for (String fileName : fileNames) {
+                text = getTexts(fileName).get(key);
+                if (text != null) {
+                    break;
+                }
+            }
+            texts.put(key, text != null ? text : key);
+        }
+        return texts;
+    }
+
+    public Registration addChangeListener(final ChangeListener listener) {
+        listeners.add(listener);
+        return new Registration() {
+            @Override
+            public void remove() {
+                listeners.remove(listener);
+            }
+        };
+    }
+
+    /**
+     * Stops watching the directory.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private String[] getFileNames(Locale locale) {
+        final String language = locale.getLanguage();
+        final String country = locale.getCountry();
+        if (language.isEmpty()) {
+            return new String[] { baseName + ".properties" };
+        } else if (country.isEmpty()) {
+            return new String[] { baseName + "_" + language + ".properties",
+                    baseName + ".properties" };
+        }
+        return new String[] {
+                baseName + "_" + language + "_" + country + ".properties",
+                baseName + "_" + language + ".properties",
+                baseName + ".properties" };
+    }
+
+    private Map<String, String> getTexts(String fileName) {
+        Map<String, String> texts = files.get(fileName);
+        if (texts == null) {
+            texts = read(fileName);
+            if (texts == null) {
+                // Retried on the next lookup
+                return Collections.emptyMap();
+            }
+            final Map<String, String> existing = files.putIfAbsent(fileName,
+                    texts);
+            if (existing != null) {
+                texts = existing;
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * Reads a file, returning an empty map if it does not exist and null if
+     * it could not be read, e.g. while it is locked.
+     */
+    private Map<String, String> read(String fileName) {
+        final Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(decode(Files
+                    .readAllBytes(directory.resolve(fileName)))));
+        } catch (NoSuchFileException e) {
+            return Collections.emptyMap();
+        } catch (IOException e) {
+            return null;
+        }
+        final Map<String, String> texts = new HashMap<String, String>(
+                properties.size() * 2);
+        for (String key : properties.stringPropertyNames()) {
+            texts.put(key, properties.getProperty(key));
+        }
+        return Collections.unmodifiableMap(texts);
+    }
+
+    private static String decode(byte[] bytes) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .decode(ByteBuffer.wrap(bytes)).toString();
+        } catch (CharacterCodingException e) {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Reads a file again and returns the keys added, removed or changed.
+     */
+    private Set<String> reload(String fileName) {
+        final Set<String> changed = new HashSet<String>();
+        final Map<String, String> texts = read(fileName);
+        if (texts == null) {
+            // Keep the previous contents until the next change
+            return changed;
+        }
+        final Map<String, String> previous = files.put(fileName, texts);
+        if (previous == null) {
+            return changed;
+        }
+        for (Map.Entry<String, String> entry : texts.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!texts.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    private void watch() {
+        while (true) {
+            // Editors write in several steps, wait until the file is quiet
+            final Set<String> fileNames = new HashSet<String>();
+            try {
+                WatchKey watchKey = watchService.take();
+                while (watchKey != null) {
+                    if (!collect(watchKey, fileNames)) {
+                        // The directory is gone
+                        return;
+                    }
+                    watchKey = watchService.poll(QUIET_PERIOD,
+                            TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            final Set<String> changed = new HashSet<String>();
+            for (String fileName : fileNames) {
+                changed.addAll(reload(fileName));
+            }
+            if (!changed.isEmpty()) {
+                final TextBundleChange change = new TextBundleChange(changed);
+                for (ChangeListener listener : listeners) {
+                    try {
+                        listener.textBundleChanged(change);
+                    } catch (RuntimeException e) {
+                        getLogger().log(Level.WARNING,
+                                "TextBundle change listener failed", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean collect(WatchKey watchKey, Set<String> fileNames) {
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                fileNames.addAll(files.keySet());
+            } else {
+                final String fileName = ((Path) event.context())
+                        .getFileName().toString();
+                // Files not looked up yet are read on their first use
+                if (files.containsKey(fileName)) {
+                    fileNames.add(fileName);
+                }
+            }
+        }
+        return watchKey.reset();
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(PropertiesFileTextBundle.class.getName());
+    }
+}
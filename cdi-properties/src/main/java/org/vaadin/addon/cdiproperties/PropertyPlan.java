@@ -0,0 +1,297 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The attributes of a property annotation that map to a setter of a component
+ * class. A plan is computed once per (component class, annotation type) and
+ * shared application-wide. Getters and setters are bound as method handles so
+ * that applying a plan involves no reflective dispatch. The setters of the
+ * Vaadin components are taken from the {@link MetadataIndex}; other classes
+ * are introspected.
+ */
+final class PropertyPlan {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(
+            Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(
+            void.class, Object.class, Object.class);
+
+    private static final ClassValue<ConcurrentMap<Class<? extends Annotation>, PropertyPlan>> PLANS = new ClassValue<ConcurrentMap<Class<? extends Annotation>, PropertyPlan>>() {
+        @Override
+        protected ConcurrentMap<Class<? extends Annotation>, PropertyPlan> computeValue(
+                Class<?> componentClass) {
+            return new ConcurrentHashMap<Class<? extends Annotation>, PropertyPlan>();
+        }
+    };
+
+    private static final ClassValue<ConcurrentMap<String, MethodHandle>> GETTERS = new ClassValue<ConcurrentMap<String, MethodHandle>>() {
+        @Override
+        protected ConcurrentMap<String, MethodHandle> computeValue(
+                Class<?> annotationType) {
+            final ConcurrentMap<String, MethodHandle> getters = new ConcurrentHashMap<String, MethodHandle>();
+            for (Method attribute : annotationType.getDeclaredMethods()) {
+                if (attribute.getParameterTypes().length == 0) {
+                    final MethodHandle getter = bind(attribute, GETTER_TYPE);
+                    if (getter != null) {
+                        getters.put(attribute.getName(), getter);
+                    }
+                }
+            }
+            return getters;
+        }
+    };
+
+    private final String[] names;
+    private final Object[] defaults;
+    private final MethodHandle[] setters;
+
+    private PropertyPlan(String[] names, Object[] defaults,
+            MethodHandle[] setters) {
+        this.names = names;
+        this.defaults = defaults;
+        this.setters = setters;
+    }
+
+    static PropertyPlan get(Class<?> componentClass,
+            Class<? extends Annotation> annotationType) {
+        final ConcurrentMap<Class<? extends Annotation>, PropertyPlan> plans = PLANS
+                .get(componentClass);
+        PropertyPlan plan = plans.get(annotationType);
+        if (plan == null) {
+            plan = create(componentClass, annotationType);
+            final PropertyPlan existing = plans.putIfAbsent(annotationType,
+                    plan);
+            if (existing != null) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Whether the given attribute maps to a setter of the component class.
+     */
+    boolean maps(String attribute) {
+        for (String name : names) {
+            if (name.equals(attribute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a handle of type {@code (Object)Object} reading the given
+     * attribute of an annotation, or null if no such attribute exists.
+     */
+    static MethodHandle getter(Class<? extends Annotation> annotationType,
+            String attribute) {
+        return GETTERS.get(annotationType).get(attribute);
+    }
+
+    /**
+     * Reads all attributes of the given annotation.
+     */
+    static Map<String, Object> read(Annotation annotation) {
+        final Map<String, MethodHandle> getters = GETTERS.get(annotation
+                .annotationType());
+        final Map<String, Object> values = new HashMap<String, Object>(
+                getters.size() * 2);
+        for (Map.Entry<String, MethodHandle> getter : getters.entrySet()) {
+            try {
+                values.put(getter.getKey(), (Object) getter.getValue()
+                        .invokeExact((Object) annotation));
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+        return values;
+    }
+
+    private static MethodHandle bind(Method method, MethodType type) {
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException e) {
+            // Fall back to the default access checks
+        }
+        try {
+            return MethodHandles.lookup().unreflect(method).asType(type);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static PropertyPlan create(Class<?> componentClass,
+            Class<? extends Annotation> annotationType) {
+        Map<String, Method> writeMethods = MetadataIndex
+                .getWriteMethods(componentClass);
+        if (writeMethods == null) {
+            writeMethods = introspect(componentClass);
+        }
+
+        final Method[] declared = annotationType.getDeclaredMethods();
+        Arrays.sort(declared, new Comparator<Method>() {
+            @Override
+            public int compare(Method o1, Method o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+
+        final List<String> names = new ArrayList<String>();
+        final List<MethodHandle> setters = new ArrayList<MethodHandle>();
+        for (Method attribute : declared) {
+            final Method setter = writeMethods.get(attribute.getName());
+            if (setter != null
+                    && wrap(setter.getParameterTypes()[0]).isAssignableFrom(
+                            wrap(attribute.getReturnType()))) {
+                final MethodHandle setterHandle = bind(setter, SETTER_TYPE);
+                if (setterHandle != null) {
+                    names.add(attribute.getName());
+                    setters.add(setterHandle);
+                }
+            }
+        }
+        final String[] mapped = names.toArray(new String[0]);
+        return new PropertyPlan(mapped,
+                Options.SKIP_DEFAULT_VALUES ? componentDefaults(componentClass,
+                        mapped) : new Object[mapped.length],
+                setters.toArray(new MethodHandle[0]));
+    }
+
+    /**
+     * Reads the given properties of a freshly created component. The
+     * annotation defaults are type defaults and may differ from these.
+     */
+    private static Object[] componentDefaults(Class<?> componentClass,
+            String[] names) {
+        final Object[] defaults = new Object[names.length];
+        try {
+            final Object component = componentClass.newInstance();
+            final Map<String, Method> readMethods = new HashMap<String, Method>();
+            for (PropertyDescriptor p : Introspector.getBeanInfo(
+                    componentClass).getPropertyDescriptors()) {
+                if (p.getReadMethod() != null) {
+                    readMethods.put(p.getName(), p.getReadMethod());
+                }
+            }
+            for (int i = 0; i < names.length; i++) {
+                final Method getter = readMethods.get(names[i]);
+                if (getter != null) {
+                    try {
+                        defaults[i] = getter.invoke(component);
+                    } catch (Exception e) {
+                        // Ignore, the attribute is always applied
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // Ignore, all attributes are applied
+        }
+        return defaults;
+    }
+
+    private static Map<String, Method> introspect(Class<?> componentClass) {
+        final Map<String, Method> writeMethods = new HashMap<String, Method>();
+        try {
+            final BeanInfo bi = Introspector.getBeanInfo(componentClass);
+            for (PropertyDescriptor p : bi.getPropertyDescriptors()) {
+                if (p.getWriteMethod() != null) {
+                    writeMethods.put(p.getName(), p.getWriteMethod());
+                }
+            }
+        } catch (IntrospectionException e) {
+            // Ignore, no setters will be applied
+        }
+        return writeMethods;
+    }
+
+    static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == char.class) {
+            return Character.class;
+        }
+        return Void.class;
+    }
+
+    /**
+     * Binds this plan to the attribute values read by {@link #read}, leaving
+     * out the ignored ones and, if {@link Options#SKIP_DEFAULT_VALUES} is set,
+     * the ones equal to the value of a freshly created component.
+     */
+    Bound bind(Map<String, Object> values) {
+        final List<MethodHandle> boundSetters = new ArrayList<MethodHandle>(
+                setters.length);
+        final List<Object> boundValues = new ArrayList<Object>(setters.length);
+        for (int i = 0; i < names.length; i++) {
+            final Object value = values.get(names[i]);
+            if (value != null
+                    && !ComponentConfigurator.IGNORED_STRING.equals(value)
+                    && !(Options.SKIP_DEFAULT_VALUES && value
+                            .equals(defaults[i]))) {
+                boundSetters.add(setters[i]);
+                boundValues.add(value);
+            }
+        }
+        return new Bound(boundSetters.toArray(new MethodHandle[0]),
+                boundValues.toArray());
+    }
+
+    /**
+     * A plan bound to the values of one annotation instance.
+     */
+    static final class Bound {
+        private final MethodHandle[] setters;
+        private final Object[] values;
+
+        private Bound(MethodHandle[] setters, Object[] values) {
+            this.setters = setters;
+            this.values = values;
+        }
+
+        void apply(Object component) {
+            for (int i = 0; i < setters.length; i++) {
+                try {
+                    setters[i].invokeExact(component, values[i]);
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    // Ignore, the setter rejected the value
+                }
+            }
+        }
+    }
+}
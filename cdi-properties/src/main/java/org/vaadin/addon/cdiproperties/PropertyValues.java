@@ -0,0 +1,306 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Member;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.enterprise.inject.spi.InjectionPoint;
+
+import com.vaadin.server.Sizeable;
+import com.vaadin.shared.ui.MarginInfo;
+import com.vaadin.ui.Component;
+
+/**
+ * Immutable snapshot of the attribute values of a property annotation. The
+ * attributes are read once when the snapshot is created, and snapshots of
+ * injection points are memoized per injection point member.
+ * <p>
+ * String attributes left to {@link ComponentConfigurator#IGNORED_STRING} are
+ * reported as null by the typed accessors. Arrays returned by this class are
+ * shared and must not be modified.
+ */
+public final class PropertyValues {
+
+    private static final ConcurrentMap<Member, PropertyValues[]> BY_MEMBER = new ConcurrentHashMap<Member, PropertyValues[]>();
+
+    private final Annotation annotation;
+    private final Map<String, Object> values;
+    private final Class<? extends Component> implementation;
+    private final PropertyPlan.Bound setters;
+    private final PrecompiledConfigurator precompiled;
+
+    private final boolean sizeFull;
+    private final boolean sizeUndefined;
+    private final String width;
+    private final String height;
+    private final float widthValue;
+    private final float heightValue;
+    private final Sizeable.Unit widthUnits;
+    private final Sizeable.Unit heightUnits;
+    private final String captionKey;
+    private final String descriptionKey;
+    private final String valueKey;
+    private final String[] captionParams;
+    private final String[] valueParams;
+    private final String[] descriptionParams;
+    private final boolean localized;
+    private final boolean lazy;
+    private final String[] styleNames;
+    private final MarginInfo marginInfo;
+
+    PropertyValues(Annotation annotation) {
+        this(annotation, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    PropertyValues(Annotation annotation, PrecompiledConfigurator precompiled) {
+        this.annotation = annotation;
+        this.precompiled = precompiled;
+        values = Collections.unmodifiableMap(PropertyPlan.read(annotation));
+        implementation = (Class<? extends Component>) values
+                .get("implementation");
+        setters = implementation == null ? null : PropertyPlan.get(
+                implementation, annotation.annotationType()).bind(values);
+
+        sizeFull = getBoolean("sizeFull", false);
+        sizeUndefined = getBoolean("sizeUndefined", false);
+        width = getString("width");
+        height = getString("height");
+        widthValue = getFloat("widthValue");
+        heightValue = getFloat("heightValue");
+        widthUnits = (Sizeable.Unit) values.get("widthUnits");
+        heightUnits = (Sizeable.Unit) values.get("heightUnits");
+        captionKey = getString("captionKey");
+        descriptionKey = getString("descriptionKey");
+        valueKey = getString("valueKey");
+        captionParams = getStrings("captionParams");
+        valueParams = getStrings("valueParams");
+        descriptionParams = getStrings("descriptionParams");
+        localized = getBoolean("localized", true);
+        lazy = getBoolean("lazy", false);
+        styleNames = getStrings("styleName");
+        marginInfo = toMarginInfo((boolean[]) values.get("margin"));
+    }
+
+    /**
+     * Returns the snapshot of the given property annotation found at an
+     * injection point.
+     */
+    static PropertyValues get(InjectionPoint ip, Annotation annotation) {
+        final Member member = ip.getMember();
+        if (member == null) {
+            return new PropertyValues(annotation);
+        }
+
+        // Parameters of the same member may carry different annotations
+        PropertyValues[] cached = BY_MEMBER.get(member);
+        if (cached != null) {
+            for (PropertyValues values : cached) {
+                if (values.annotation == annotation) {
+                    return values;
+                }
+            }
+            for (PropertyValues values : cached) {
+                if (values.annotation.equals(annotation)) {
+                    return values;
+                }
+            }
+        }
+
+        final PropertyValues created = new PropertyValues(annotation,
+                Precompiled.find(ip));
+        while (true) {
+            if (cached == null) {
+                cached = BY_MEMBER.putIfAbsent(member,
+                        new PropertyValues[] { created });
+                if (cached == null) {
+                    return created;
+                }
+            } else {
+                final PropertyValues[] extended = Arrays.copyOf(cached,
+                        cached.length + 1);
+                extended[cached.length] = created;
+                if (BY_MEMBER.replace(member, cached, extended)) {
+                    return created;
+                }
+                cached = BY_MEMBER.get(member);
+            }
+        }
+    }
+
+    private boolean getBoolean(String name, boolean defaultValue) {
+        final Boolean value = (Boolean) values.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private float getFloat(String name) {
+        final Float value = (Float) values.get(name);
+        return value == null ? -1f : value;
+    }
+
+    private String getString(String name) {
+        final String value = (String) values.get(name);
+        return ComponentConfigurator.IGNORED_STRING.equals(value) ? null
+                : value;
+    }
+
+    private String[] getStrings(String name) {
+        final String[] value = (String[]) values.get(name);
+        return value == null ? new String[0] : value;
+    }
+
+    private static MarginInfo toMarginInfo(boolean[] margin) {
+        MarginInfo mi = null;
+        if (margin == null) {
+            // No margin attribute
+        } else if (margin.length == 1) {
+            mi = new MarginInfo(margin[0]);
+        } else if (margin.length == 2) {
+            mi = new MarginInfo(margin[0], margin[1], margin[0], margin[1]);
+        } else if (margin.length == 3) {
+            mi = new MarginInfo(margin[0], margin[1], margin[2], margin[1]);
+        } else if (margin.length == 4) {
+            mi = new MarginInfo(margin[0], margin[1], margin[2], margin[3]);
+        }
+        return mi;
+    }
+
+    void applySetters(Component component) {
+        if (component.getClass() != implementation) {
+            // A component created elsewhere, bind the plan of its own class
+            PropertyPlan.get(component.getClass(), annotation.annotationType())
+                    .bind(values).apply(component);
+        } else if (setters != null) {
+            setters.apply(component);
+        }
+    }
+
+    /**
+     * Creates the component, either through the precompiled configurator of
+     * the injection point or by instantiating the implementation and applying
+     * the setters. Lazy components are only instantiated.
+     */
+    Component createComponent() throws InstantiationException,
+            IllegalAccessException {
+        if (lazy) {
+            // Configured on first attach
+            return implementation.newInstance();
+        } else if (precompiled != null) {
+            return precompiled.create();
+        }
+        final Component component = implementation.newInstance();
+        applySetters(component);
+        return component;
+    }
+
+    /**
+     * Whether the injection point has a configurator generated by the
+     * cdi-properties-processor.
+     */
+    public boolean isPrecompiled() {
+        return precompiled != null;
+    }
+
+    public Annotation getAnnotation() {
+        return annotation;
+    }
+
+    /**
+     * Returns the raw value of the given attribute, or null if the annotation
+     * has no such attribute.
+     */
+    public Object get(String name) {
+        return values.get(name);
+    }
+
+    public Class<? extends Component> getImplementation() {
+        return implementation;
+    }
+
+    public boolean isSizeFull() {
+        return sizeFull;
+    }
+
+    public boolean isSizeUndefined() {
+        return sizeUndefined;
+    }
+
+    public String getWidth() {
+        return width;
+    }
+
+    public String getHeight() {
+        return height;
+    }
+
+    public float getWidthValue() {
+        return widthValue;
+    }
+
+    public float getHeightValue() {
+        return heightValue;
+    }
+
+    public Sizeable.Unit getWidthUnits() {
+        return widthUnits;
+    }
+
+    public Sizeable.Unit getHeightUnits() {
+        return heightUnits;
+    }
+
+    public String getCaptionKey() {
+        return captionKey;
+    }
+
+    public String getDescriptionKey() {
+        return descriptionKey;
+    }
+
+    public String getValueKey() {
+        return valueKey;
+    }
+
+    /**
+     * The MessageFormat arguments of the caption text, empty if none.
+     */
+    public String[] getCaptionParams() {
+        return captionParams;
+    }
+
+    public String[] getValueParams() {
+        return valueParams;
+    }
+
+    public String[] getDescriptionParams() {
+        return descriptionParams;
+    }
+
+    public boolean isLocalized() {
+        return localized;
+    }
+
+    /**
+     * Whether the configuration of the component is deferred until it is
+     * first attached.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public String[] getStyleNames() {
+        return styleNames;
+    }
+
+    /**
+     * The margin attribute converted to a {@link MarginInfo}, or null if the
+     * annotation defines no margin.
+     */
+    public MarginInfo getMarginInfo() {
+        return marginInfo;
+    }
+}
@@ -0,0 +1,234 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.Serializable;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.vaadin.addon.cdiproperties.Localizer.TextBundleUpdated;
+
+/**
+ * Application-wide translation tables, one per locale, through which the
+ * configurator and {@link Localizer} resolve their texts. Each key is
+ * resolved once per locale and node, and equal texts are interned so that
+ * all sessions share the same String instances. Since the tables are kept
+ * per locale, a UI switching its language needs no invalidation. Changed
+ * texts are dropped on a {@link TextBundleUpdated} event carrying a
+ * {@link TextBundleChange}, on a node-wide
+ * {@link LocalizationBroadcaster#broadcast(Object)} or on {@link #reload()}.
+ * <p>
+ * Only enabled with {@code -Dorg.vaadin.addon.cdiproperties.sharedTranslations=true},
+ * since it requires the texts of a {@link TextBundle} to depend on the locale
+ * of the current UI only. Otherwise lookups go to the bundle directly.
+ * <p>
+ * Texts with parameters are formatted with {@link MessageFormat}s parsed once
+ * per locale and pattern, regardless of the option.
+ */
+@SuppressWarnings("serial")
+@ApplicationScoped
+public class SharedTranslations implements Serializable {
+
+    private final AtomicReference<ConcurrentMap<Locale, Table>> tables = new AtomicReference<ConcurrentMap<Locale, Table>>(
+            new ConcurrentHashMap<Locale, Table>());
+
+    private transient volatile ConcurrentMap<Locale, ConcurrentMap<String, MessageFormat>> formats;
+
+    @Inject
+    private Metrics metrics;
+
+    String getText(final TextBundle textBundle, final String key) {
+        if (!Options.SHARED_TRANSLATIONS) {
+            return resolve(textBundle, key);
+        }
+
+        final Table table = getTable(TextBundleCache.currentLocale());
+        String text = table.get(key);
+        if (text == null) {
+            text = table.put(key, resolve(textBundle, key));
+        }
+        return text;
+    }
+
+    /**
+     * Returns the text of the given key formatted with the given parameters.
+     */
+    String getText(final TextBundle textBundle, final String key,
+            final Object[] params) {
+        final String pattern = getText(textBundle, key);
+        return params == null || params.length == 0 ? pattern : format(
+                pattern, params);
+    }
+
+    /**
+     * Formats a text resolved from the bundle with the given parameters for
+     * the current locale.
+     */
+    String format(final String pattern, final Object[] params) {
+        if (pattern == null) {
+            return null;
+        }
+        final MessageFormat format = getFormat(
+                TextBundleCache.currentLocale(), pattern);
+        if (format == null) {
+            return pattern;
+        }
+        // MessageFormat is not thread-safe
+        synchronized (format) {
+            return format.format(params);
+        }
+    }
+
+    private MessageFormat getFormat(final Locale locale, final String pattern) {
+        ConcurrentMap<Locale, ConcurrentMap<String, MessageFormat>> current = formats;
+        if (current == null) {
+            current = new ConcurrentHashMap<Locale, ConcurrentMap<String, MessageFormat>>();
+            formats = current;
+        }
+        ConcurrentMap<String, MessageFormat> byPattern = current.get(locale);
+        if (byPattern == null) {
+            byPattern = new ConcurrentHashMap<String, MessageFormat>();
+            final ConcurrentMap<String, MessageFormat> existing = current
+                    .putIfAbsent(locale, byPattern);
+            if (existing != null) {
+                byPattern = existing;
+            }
+        }
+        MessageFormat format = byPattern.get(pattern);
+        if (format == null) {
+            try {
+                format = new MessageFormat(pattern, locale);
+            } catch (final IllegalArgumentException e) {
+                // Not a valid pattern, shown as is
+                return null;
+            }
+            final MessageFormat existing = byPattern.putIfAbsent(pattern,
+                    format);
+            if (existing != null) {
+                format = existing;
+            }
+        }
+        return format;
+    }
+
+    Map<String, String> getTexts(final TextBundle textBundle,
+            final Set<String> keys) {
+        if (!Options.SHARED_TRANSLATIONS) {
+            return resolve(textBundle, keys);
+        }
+
+        final Table table = getTable(TextBundleCache.currentLocale());
+        final Map<String, String> texts = new HashMap<String, String>(
+                keys.size() * 2);
+        final Set<String> missing = new HashSet<String>();
+        for (String key : keys) {
+            final String text = table.get(key);
+            if (text != null) {
+                texts.put(key, text);
+            } else {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, String> entry : resolve(textBundle,
+                    missing).entrySet()) {
+                texts.put(entry.getKey(),
+                        table.put(entry.getKey(), entry.getValue()));
+            }
+        }
+        return texts;
+    }
+
+    private String resolve(final TextBundle textBundle, final String key) {
+        if (!Options.METRICS) {
+            return textBundle.getText(key);
+        }
+        final long start = System.nanoTime();
+        final String text = textBundle.getText(key);
+        metrics.textsResolved(1, System.nanoTime() - start);
+        return text;
+    }
+
+    private Map<String, String> resolve(final TextBundle textBundle,
+            final Set<String> keys) {
+        if (!Options.METRICS) {
+            return textBundle.getTexts(keys);
+        }
+        final long start = System.nanoTime();
+        final Map<String, String> texts = textBundle.getTexts(keys);
+        metrics.textsResolved(keys.size(), System.nanoTime() - start);
+        return texts;
+    }
+
+    /**
+     * Drops all tables. Texts are resolved again on their next use.
+     */
+    public void reload() {
+        tables.set(new ConcurrentHashMap<Locale, Table>());
+        formats = null;
+    }
+
+    /**
+     * Drops the texts of the given keys in all tables.
+     */
+    public void reload(final Set<String> keys) {
+        for (Table table : tables.get().values()) {
+            table.texts.keySet().removeAll(keys);
+        }
+    }
+
+    void onTextBundleUpdated(
+            @Observes @TextBundleUpdated final Object parameters) {
+        // Other events only switch the locale of a UI
+        if (parameters instanceof TextBundleChange) {
+            reload(((TextBundleChange) parameters).getKeys());
+        }
+    }
+
+    private Table getTable(final Locale locale) {
+        final ConcurrentMap<Locale, Table> current = tables.get();
+        Table table = current.get(locale);
+        if (table == null) {
+            table = new Table();
+            final Table existing = current.putIfAbsent(locale, table);
+            if (existing != null) {
+                table = existing;
+            }
+        }
+        return table;
+    }
+
+    private static final class Table {
+        private final ConcurrentMap<String, String> texts = new ConcurrentHashMap<String, String>();
+        private final ConcurrentMap<String, String> interned = new ConcurrentHashMap<String, String>();
+
+        String get(final String key) {
+            return texts.get(key);
+        }
+
+        /**
+         * Stores the text of a key and returns the shared instance of it.
+         */
+        String put(final String key, final String text) {
+            if (text == null) {
+                return null;
+            }
+            String shared = interned.putIfAbsent(text, text);
+            if (shared == null) {
+                shared = text;
+            }
+            final String existing = texts.putIfAbsent(key, shared);
+            return existing != null ? existing : shared;
+        }
+    }
+}
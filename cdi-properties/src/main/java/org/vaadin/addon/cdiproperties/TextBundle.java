@@ -1,8 +1,26 @@
 package org.vaadin.addon.cdiproperties;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Interface for a bundle implementation used for obtaining (localized) texts.
  */
 public interface TextBundle {
     String getText(String key, Object... params);
+
+    /**
+     * Returns the texts of several keys at once. Used when re-localizing a UI;
+     * implementations backed by an expensive source should override this to
+     * resolve all keys in one go.
+     */
+    default Map<String, String> getTexts(Set<String> keys) {
+        final Map<String, String> texts = new HashMap<String, String>(
+                keys.size() * 2);
+        for (String key : keys) {
+            texts.put(key, getText(key));
+        }
+        return texts;
+    }
 }
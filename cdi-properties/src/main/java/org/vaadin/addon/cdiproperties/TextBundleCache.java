@@ -0,0 +1,126 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+
+import org.vaadin.addon.cdiproperties.Localizer.TextBundleUpdated;
+
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+
+/**
+ * Application-wide cache of resolved texts used by {@link CachingTextBundle}.
+ * Texts are kept per locale in bounded LRU maps, so a UI switching its
+ * language needs no invalidation. Changed texts are dropped on a
+ * {@link TextBundleUpdated} event carrying a {@link TextBundleChange}, on a
+ * node-wide {@link LocalizationBroadcaster#broadcast(Object)} or on
+ * {@link #invalidate()}.
+ */
+@SuppressWarnings("serial")
+@ApplicationScoped
+public class TextBundleCache implements Serializable {
+
+    private final ConcurrentMap<Locale, Map<String, String>> caches = new ConcurrentHashMap<Locale, Map<String, String>>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The locale of the current UI or session, or the default locale outside
+     * of Vaadin requests.
+     */
+    static Locale currentLocale() {
+        Locale locale = null;
+        if (UI.getCurrent() != null) {
+            locale = UI.getCurrent().getLocale();
+        } else if (VaadinSession.getCurrent() != null) {
+            locale = VaadinSession.getCurrent().getLocale();
+        }
+        return locale != null ? locale : Locale.getDefault();
+    }
+
+    String get(final Locale locale, final String key) {
+        final Map<String, String> cache = caches.get(locale);
+        final String text = cache != null ? cache.get(key) : null;
+        if (text != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return text;
+    }
+
+    void put(final Locale locale, final String key, final String text) {
+        Map<String, String> cache = caches.get(locale);
+        if (cache == null) {
+            cache = Collections.synchronizedMap(new LruMap(
+                    Options.TEXT_CACHE_SIZE));
+            final Map<String, String> existing = caches.putIfAbsent(locale,
+                    cache);
+            if (existing != null) {
+                cache = existing;
+            }
+        }
+        cache.put(key, text);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, String> cache : caches.values()) {
+            size += cache.size();
+        }
+        return size;
+    }
+
+    public void invalidate() {
+        caches.clear();
+    }
+
+    /**
+     * Drops the texts of the given keys in all locales.
+     */
+    void invalidate(final Set<String> keys) {
+        for (Map<String, String> cache : caches.values()) {
+            cache.keySet().removeAll(keys);
+        }
+    }
+
+    void onTextBundleUpdated(
+            @Observes @TextBundleUpdated final Object parameters) {
+        // Other events only switch the locale of a UI
+        if (parameters instanceof TextBundleChange) {
+            invalidate(((TextBundleChange) parameters).getKeys());
+        }
+    }
+
+    private static class LruMap extends LinkedHashMap<String, String> {
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
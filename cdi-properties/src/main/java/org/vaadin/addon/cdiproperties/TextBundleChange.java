@@ -0,0 +1,32 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.vaadin.addon.cdiproperties.Localizer.TextBundleUpdated;
+
+/**
+ * Payload of a {@link TextBundleUpdated} event naming the keys whose texts
+ * changed. Only the components bound to these keys are updated; any other
+ * payload updates all components.
+ */
+@SuppressWarnings("serial")
+public final class TextBundleChange implements Serializable {
+
+    private final Set<String> keys;
+
+    public TextBundleChange(Set<String> keys) {
+        this.keys = Collections.unmodifiableSet(new HashSet<String>(keys));
+    }
+
+    public Set<String> getKeys() {
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        return "TextBundleChange" + keys;
+    }
+}
@@ -0,0 +1,47 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.Serializable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Runs the delayed re-localization passes of throttled UIs, see
+ * {@code -Dorg.vaadin.addon.cdiproperties.updateThrottle}. The thread is
+ * started on first use and stopped with the application, dropping the
+ * passes still pending.
+ */
+@SuppressWarnings("serial")
+@ApplicationScoped
+public class UpdateScheduler implements Serializable {
+
+    private transient ScheduledExecutorService scheduler;
+
+    synchronized void schedule(final Runnable task, final long delayMillis) {
+        if (scheduler == null) {
+            scheduler = Executors
+                    .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable,
+                                    "cdi-properties-localizer");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.vaadin.addon.cdiproperties;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A map with weakly referenced keys compared by identity. Entries are dropped
+ * once their key has been garbage collected. Not thread-safe.
+ */
+@SuppressWarnings("serial")
+final class WeakIdentityMap<K, V> implements Serializable {
+
+    private transient ReferenceQueue<K> queue = new ReferenceQueue<K>();
+    private transient Map<Key<K>, V> map = new HashMap<Key<K>, V>();
+
+    V get(K key) {
+        expunge();
+        return map.get(new Key<K>(key, null));
+    }
+
+    V put(K key, V value) {
+        expunge();
+        return map.put(new Key<K>(key, queue), value);
+    }
+
+    V remove(K key) {
+        expunge();
+        return map.remove(new Key<K>(key, null));
+    }
+
+    int size() {
+        expunge();
+        return map.size();
+    }
+
+    /**
+     * Returns the entries whose key is still reachable.
+     */
+    List<Entry<K, V>> entries() {
+        expunge();
+        final List<Entry<K, V>> entries = new ArrayList<Entry<K, V>>(
+                map.size());
+        for (Entry<Key<K>, V> entry : map.entrySet()) {
+            final K key = entry.getKey().get();
+            if (key != null) {
+                entries.add(new SimpleImmutableEntry<K, V>(key, entry
+                        .getValue()));
+            }
+        }
+        return entries;
+    }
+
+    private void expunge() {
+        Reference<? extends K> reference;
+        while ((reference = queue.poll()) != null) {
+            map.remove(reference);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        final List<Entry<K, V>> entries = entries();
+        out.writeInt(entries.size());
+        for (Entry<K, V> entry : entries) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        queue = new ReferenceQueue<K>();
+        map = new HashMap<Key<K>, V>();
+        final int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            put((K) in.readObject(), (V) in.readObject());
+        }
+    }
+
+    private static final class Key<K> extends WeakReference<K> {
+        private final int hash;
+
+        Key(K referent, ReferenceQueue<K> queue) {
+            super(referent, queue);
+            hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Object referent = get();
+            return referent != null && referent == ((Key<?>) obj).get();
+        }
+    }
+}